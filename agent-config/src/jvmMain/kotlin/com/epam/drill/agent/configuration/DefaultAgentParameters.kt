@@ -27,23 +27,31 @@ import com.epam.drill.agent.konform.validation.ValidationResult
 import mu.KotlinLogging
 import kotlin.let
 
+/**
+ * Agent parameters backed by an immutable snapshot.
+ *
+ * Each parameter name gets a dense slot on its first definition, values are parsed and validated once
+ * and stored to the snapshot arrays by slot, so a read of a defined parameter is an array load.
+ * Definition of new parameters publishes a new snapshot through a volatile reference.
+ */
 actual class DefaultAgentParameters actual constructor(
     private val inputParameters: Map<String, String>
 ) : AgentParameters {
     private val logger = KotlinLogging.logger {}
-    private val definedParameters = mutableMapOf<String, Any?>()
-    private val parameterDefinitions = mutableMapOf<String, BaseAgentParameterDefinition<*>>()
-    private val validationErrors = mutableMapOf<String, ValidationError<*>>()
+
+    @Volatile
+    private var snapshot = Snapshot(emptyArray(), emptyArray(), emptyArray(), emptyMap())
 
     @Suppress("UNCHECKED_CAST")
     actual override operator fun <T : Any> get(name: String): T? =
-        definedParameters[name] as T?
+        snapshot.let { it.slots[name]?.let(it.values::get) } as T?
 
     @Suppress("UNCHECKED_CAST")
     actual override operator fun <T : Any> get(definition: AgentParameterDefinition<T>): T {
-        if (!parameterDefinitions.containsKey(definition.name)) define(definition)
-        return definedParameters[definition.name] as T?
-            ?: validationErrors[definition.name]?.let {
+        val snapshot = definedSnapshot(definition)
+        val slot = definition.slot
+        return snapshot.values[slot] as T?
+            ?: snapshot.errors[slot]?.let {
                 throw IllegalArgumentException(
                     "Parameter '${definition.name}' has validation errors: \n" +
                             it.messages.joinToString("\n")
@@ -54,39 +62,43 @@ actual class DefaultAgentParameters actual constructor(
             )
     }
 
-    @Suppress("UNCHECKED_CAST")
-    actual override operator fun <T : Any> getValue(ref: Any?, property: KProperty<*>): T? =
-        definedParameters[property.name] as T?
+    actual override operator fun <T : Any> getValue(ref: Any?, property: KProperty<*>): T? = get(property.name)
 
     @Suppress("UNCHECKED_CAST")
-    actual override fun <T : Any> get(definition: NullableAgentParameterDefinition<T>): T? {
-        if (!parameterDefinitions.containsKey(definition.name)) define(definition)
-        return definedParameters[definition.name] as T?
-    }
+    actual override fun <T : Any> get(definition: NullableAgentParameterDefinition<T>): T? =
+        definedSnapshot(definition).values[definition.slot] as T?
 
+    @Synchronized
     actual override fun define(vararg definitions: BaseAgentParameterDefinition<*>): List<ValidationError<*>> {
         val errors = mutableListOf<ValidationError<*>>()
         definitions.forEach { def ->
-            if (parameterDefinitions.containsKey(def.name)) {
-                validationErrors[def.name]?.also {
+            val slot = assignSlot(def)
+            if (snapshot.isDefined(def, slot)) {
+                snapshot.errors[slot]?.also {
                     errors.add(it)
                 }
                 return@forEach
             }
-            parameterDefinitions[def.name] = def
-            definedParameters[def.name] = (inputParameters[def.name]
+            val definitionErrors = mutableListOf<ValidationError<*>>()
+            val value = (inputParameters[def.name]
                 ?.runCatching(def.parser)
                 ?.getOrNull()
-                ?.let { softValidate(it, def, errors) }
+                ?.let { softValidate(it, def, definitionErrors) }
                 ?: (def as? AgentParameterDefinition)?.defaultValue)
-                .let { strictValidate(it, def, errors) }
-            errors.firstOrNull { it.definition.name == def.name }?.also {
-                validationErrors[def.name] = it
-            } ?: validationErrors.remove(def.name)
+                .let { strictValidate(it, def, definitionErrors) }
+            errors.addAll(definitionErrors)
+            snapshot = snapshot.with(def, slot, value, definitionErrors.firstOrNull())
         }
         return errors
     }
 
+    private fun definedSnapshot(definition: BaseAgentParameterDefinition<*>): Snapshot {
+        val snapshot = this.snapshot
+        if (snapshot.isDefined(definition, definition.slot)) return snapshot
+        define(definition)
+        return this.snapshot
+    }
+
     private fun strictValidate(
         value: Any?,
         definition: BaseAgentParameterDefinition<*>,
@@ -126,4 +138,43 @@ actual class DefaultAgentParameters actual constructor(
         val typedValue = value as T?
         return validator(typedValue, this)
     }
+
+    private class Snapshot(
+        val definitions: Array<BaseAgentParameterDefinition<*>?>,
+        val values: Array<Any?>,
+        val errors: Array<ValidationError<*>?>,
+        val slots: Map<String, Int>
+    ) {
+        fun isDefined(definition: BaseAgentParameterDefinition<*>, slot: Int) =
+            slot >= 0 && slot < definitions.size && definitions[slot]?.name == definition.name
+
+        fun with(
+            definition: BaseAgentParameterDefinition<*>,
+            slot: Int,
+            value: Any?,
+            error: ValidationError<*>?
+        ): Snapshot {
+            val size = maxOf(definitions.size, slot + 1)
+            return Snapshot(
+                definitions.copyOf(size).also { it[slot] = definition },
+                values.copyOf(size).also { it[slot] = value },
+                errors.copyOf(size).also { it[slot] = error },
+                slots + (definition.name to slot)
+            )
+        }
+    }
+
+    private companion object {
+        private var nextSlot = 0
+        private val slotsByName = mutableMapOf<String, Int>()
+
+        /**
+         * Definitions of the same parameter name share the slot, so a parameter is defined once per name.
+         */
+        @Synchronized
+        fun assignSlot(definition: BaseAgentParameterDefinition<*>): Int {
+            if (definition.slot < 0) definition.slot = slotsByName.getOrPut(definition.name) { nextSlot++ }
+            return definition.slot
+        }
+    }
 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.configuration
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import com.epam.drill.agent.common.configuration.AgentParameterDefinition
+import com.epam.drill.agent.common.configuration.NullableAgentParameterDefinition
+
+class DefaultAgentParametersTest {
+
+    @Test
+    fun `values are read at snapshot time and unaffected by later input changes`() {
+        val input = mutableMapOf("snapshotParam" to "first")
+        val parameters = DefaultAgentParameters(input)
+        val definition = AgentParameterDefinition.forString("snapshotParam", defaultValue = "default")
+
+        assertEquals("first", parameters[definition])
+        input["snapshotParam"] = "second"
+
+        assertEquals("first", parameters[definition])
+        assertTrue(parameters.define(definition).isEmpty())
+        assertEquals("first", parameters[definition])
+        assertEquals("first", parameters.get<String>("snapshotParam"))
+    }
+
+    @Test
+    fun `parameters are read by name only after definition`() {
+        val parameters = DefaultAgentParameters(mapOf("lazyParam" to "value"))
+
+        assertNull(parameters.get<String>("lazyParam"))
+        assertEquals("value", parameters[NullableAgentParameterDefinition.forString("lazyParam")])
+        assertEquals("value", parameters.get<String>("lazyParam"))
+    }
+
+    @Test
+    fun `snapshots of different parameters are independent`() {
+        val definition = AgentParameterDefinition.forInt("independentParam", defaultValue = 0)
+        val parameters = DefaultAgentParameters(mapOf("independentParam" to "1"))
+        val overridden = DefaultAgentParameters(mapOf("independentParam" to "2"))
+
+        assertEquals(1, parameters[definition])
+        assertEquals(2, overridden[definition])
+        assertEquals(1, parameters[definition])
+    }
+
+    @Test
+    fun `definitions with the same name are defined once`() {
+        val parameters = DefaultAgentParameters(mapOf("sharedParam" to "input"))
+        val definition = AgentParameterDefinition.forString("sharedParam", defaultValue = "default")
+        val redefinition = AgentParameterDefinition.forString("sharedParam", defaultValue = "redefined")
+
+        assertEquals("input", parameters[definition])
+        assertTrue(parameters.define(redefinition).isEmpty())
+        assertEquals(definition.slot, redefinition.slot)
+        assertEquals("input", parameters[redefinition])
+
+        val defaults = DefaultAgentParameters(emptyMap())
+        assertEquals("redefined", defaults[redefinition])
+        assertEquals("redefined", defaults[definition])
+    }
+
+}
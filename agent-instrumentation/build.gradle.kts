@@ -14,6 +14,8 @@ import com.hierynomus.gradle.license.tasks.LicenseFormat
 
 plugins {
     kotlin("multiplatform")
+    kotlin("plugin.allopen")
+    id("org.jetbrains.kotlinx.benchmark")
     id("com.github.johnrengelman.shadow")
     id("com.github.hierynomus.license")
 }
@@ -34,6 +36,7 @@ val kotlinxCollectionsVersion: String by parent!!.extra
 val microutilsLoggingVersion: String by parent!!.extra
 val atomicfuVersion: String by parent!!.extra
 val ktorVersion: String by parent!!.extra
+val kotlinxBenchmarkVersion: String by parent!!.extra
 
 repositories {
     mavenCentral()
@@ -46,7 +49,9 @@ kotlin {
             compilation = compilations["intTest"]
         }
     }
-    jvm(configure = configureIntTestTarget)
+    jvm(configure = configureIntTestTarget).apply {
+        compilations.create("benchmark").associateWith(compilations["main"])
+    }
     linuxX64(configure = configureIntTestTarget)
     macosX64(configure = configureIntTestTarget).apply {
         if (macosLd64.toBoolean()) {
@@ -80,6 +85,7 @@ kotlin {
             dependencies {
                 api("io.github.microutils:kotlin-logging:$microutilsLoggingVersion")
                 implementation(project(":common"))
+                implementation(project(":konform"))
             }
         }
         val commonIntTest by creating
@@ -91,6 +97,21 @@ kotlin {
                 implementation("net.bytebuddy:byte-buddy:$bytebuddyVersion")
             }
         }
+        val jvmTest by getting {
+            dependencies {
+                implementation(kotlin("test-junit"))
+                implementation("io.netty:netty-buffer:4.1.106.Final")
+                implementation("io.netty:netty-codec-http:4.1.106.Final")
+                implementation("io.netty:netty-codec-http2:4.1.106.Final")
+            }
+        }
+        val jvmBenchmark by getting {
+            dependencies {
+                implementation("org.jetbrains.kotlinx:kotlinx-benchmark-runtime:$kotlinxBenchmarkVersion")
+                implementation("org.javassist:javassist:$javassistVersion")
+                implementation("net.bytebuddy:byte-buddy:$bytebuddyVersion")
+            }
+        }
         val jvmIntTest by getting {
             dependsOn(commonIntTest)
             dependencies {
@@ -167,6 +188,7 @@ kotlin {
             .onEach(cleanNativeClassesTask)
         val jvmMainCompilation = targets.withType<KotlinJvmTarget>()["jvm"].compilations["main"]
         val jvmIntTestCompilation = targets.withType<KotlinJvmTarget>()["jvm"].compilations["intTest"]
+        val jvmBenchmarkCompilation = targets.withType<KotlinJvmTarget>()["jvm"].compilations["benchmark"]
         val runtimeJar by registering(ShadowJar::class) {
             mergeServiceFiles()
             isZip64 = true
@@ -196,6 +218,41 @@ kotlin {
             dependsOn(runtimeJar)
             dependsOn(intTestAgentLib.linkTask)
         }
+        register("benchmarkGc", JavaExec::class) {
+            description = "Runs the JMH benchmarks with the gc profiler reporting allocation rates, " +
+                    "use -PbenchmarkInclude to filter benchmarks by regexp"
+            group = "benchmark"
+            val benchmarkJar = named("jvmBenchmarkBenchmarkJar")
+            mainClass.set("org.openjdk.jmh.Main")
+            classpath = files(benchmarkJar) + jvmBenchmarkCompilation.runtimeDependencyFiles
+            args = listOf("-prof", "gc", findProperty("benchmarkInclude")?.toString() ?: ".*")
+            dependsOn(benchmarkJar)
+        }
+        register("staticWeave", JavaExec::class) {
+            description = "Weaves jar by transformer objects ahead of time, " +
+                    "use -PweaveInput, -PweaveOutput, -PweaveTransformers and -PweaveClasspath to configure"
+            group = "build"
+            mainClass.set("com.epam.drill.agent.instrument.StaticWeaver")
+            val weaveClasspath = findProperty("weaveClasspath")?.toString() ?: ""
+            classpath = jvmMainCompilation.runtimeDependencyFiles + jvmMainCompilation.output.allOutputs +
+                    files(weaveClasspath.split(File.pathSeparator).filter(String::isNotBlank))
+            args = listOf(
+                findProperty("weaveInput")?.toString() ?: "",
+                findProperty("weaveOutput")?.toString() ?: "",
+                findProperty("weaveTransformers")?.toString() ?: "",
+                weaveClasspath
+            )
+        }
+    }
+}
+
+allOpen {
+    annotation("org.openjdk.jmh.annotations.State")
+}
+
+benchmark {
+    targets {
+        register("jvmBenchmark")
     }
 }
 
@@ -21,6 +21,13 @@ interface HeadersProcessor {
     }
     fun removeHeaders()
     fun storeHeaders(headers: Map<String, String>)
+
+    /**
+     * Stores headers of an incoming server request, requests without drill session get the initial drill context.
+     */
+    fun storeRequestHeaders(headers: Map<String, String>?) {
+        headers?.let(::storeHeaders)
+    }
     fun retrieveHeaders(): Map<String, String>?
     fun hasHeaders(): Boolean
     fun isProcessRequests(): Boolean
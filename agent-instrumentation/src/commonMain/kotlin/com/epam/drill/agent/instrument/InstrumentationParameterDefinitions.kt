@@ -2,6 +2,10 @@ package com.epam.drill.agent.instrument
 
 import com.epam.drill.agent.common.configuration.AgentParameterDefinition
 import com.epam.drill.agent.common.configuration.AgentParameterDefinitionCollection
+import com.epam.drill.agent.common.configuration.NullableAgentParameterDefinition
+import com.epam.drill.agent.konform.validation.jsonschema.enum
+import com.epam.drill.agent.konform.validation.jsonschema.maximum
+import com.epam.drill.agent.konform.validation.jsonschema.minimum
 
 /**
  * Copyright 2020 - 2022 EPAM Systems
@@ -25,10 +29,41 @@ object InstrumentationParameterDefinitions: AgentParameterDefinitionCollection()
         description = "Enable/disable context propagation",
         defaultValue = true
     ).register()
+    val CONTEXT_PROPAGATION_SAMPLING_PERCENT = AgentParameterDefinition.forInt(
+        name = "contextPropagationSamplingPercent",
+        description = "Percentage of requests without drill session headers processed with the initial drill context",
+        defaultValue = 100,
+        validator = {
+            minimum(0)
+            maximum(100)
+        }
+    ).register()
+    val CONTEXT_PROPAGATION_RATE_LIMIT = AgentParameterDefinition.forLong(
+        name = "contextPropagationRateLimit",
+        description = "Maximum number of requests without drill session headers processed per second, 0 for no limit",
+        defaultValue = 0L,
+        validator = { minimum(0) }
+    ).register()
+    val INSTRUMENTATION_BYTECODE_ENGINE = AgentParameterDefinition.forString(
+        name = "instrumentationBytecodeEngine",
+        description = "Bytecode engine for hook-based transformers: javassist or asm",
+        defaultValue = "javassist",
+        validator = { enum("javassist", "asm") }
+    ).register()
+    val INSTRUMENTATION_TRANSFORM_CACHE_DIR = NullableAgentParameterDefinition.forString(
+        name = "instrumentationTransformCacheDir",
+        description = "Directory for the persistent cache of transformed classes, cache is disabled if not set"
+    ).register()
     val INSTRUMENTATION_COMPATIBILITY_TESTS_ENABLED = AgentParameterDefinition.forBoolean(name = "instrumentationCompatibilityTestsEnabled", defaultValue = false).register()
 
     //Async frameworks
     val INSTRUMENTATION_REACTOR_ENABLED = AgentParameterDefinition.forBoolean(name = "instrumentationReactorEnabled", defaultValue = true).register()
+    val INSTRUMENTATION_REACTOR_PROXY_CLASSES_LIMIT = AgentParameterDefinition.forInt(
+        name = "instrumentationReactorProxyClassesLimit",
+        description = "Maximum number of Reactor proxy classes generated per classloader, publishers over the limit aren't propagated",
+        defaultValue = 1000,
+        validator = { minimum(1) }
+    ).register()
     val INSTRUMENTATION_TTL_ENABLED = AgentParameterDefinition.forBoolean(name = "instrumentationTtlEnabled", defaultValue = true).register()
 
     //Messaging
@@ -18,6 +18,7 @@ package com.epam.drill.agent.instrument
 interface PayloadProcessor {
     companion object {
         const val HEADER_WS_PER_MESSAGE = "drill-ws-per-message"
+        const val HEADER_WS_CONTEXT_CHANGES = "drill-ws-context-changes"
         const val PAYLOAD_PREFIX = "\n\ndrill-payload-begin\n"
         const val PAYLOAD_SUFFIX = "\ndrill-payload-end"
     }
@@ -25,6 +25,7 @@ const val TOMCAT_HTTP_FILTER = "org/apache/catalina/core/ApplicationFilterChain"
 const val JETTY_SERVER_HANDLER =  "org/eclipse/jetty/server/handler/HandlerWrapper"
 const val UNDERTOW_SERVER_CONNECTORS = "io/undertow/server/Connectors"
 const val NETTY_CHANNEL_HANDLER_CONTEXT = "io/netty/channel/AbstractChannelHandlerContext"
+const val NETTY_CHANNEL_PIPELINE = "io/netty/channel/DefaultChannelPipeline"
 
 const val SSL_ENGINE_CLASS_NAME = "javax/net/ssl/SSLEngine"
 
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.util.concurrent.TimeUnit
+import kotlinx.benchmark.Benchmark
+import kotlinx.benchmark.BenchmarkMode
+import kotlinx.benchmark.Mode
+import kotlinx.benchmark.OutputTimeUnit
+import kotlinx.benchmark.Param
+import kotlinx.benchmark.Scope
+import kotlinx.benchmark.Setup
+import kotlinx.benchmark.State
+
+/**
+ * Compares [CookieScanner] with the `split` based parsing of Cookie headers it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+class CookieScannerBenchmark {
+
+    @Param("0", "2", "16")
+    var otherCookies = 0
+
+    private var header = ""
+
+    @Setup
+    fun setUp() {
+        header = (0 until otherCookies).map { "cookie$it=value-$it" }
+            .plus(listOf("drill-session-id=session-1", "drill-test-name=test-1"))
+            .joinToString("; ")
+    }
+
+    @Benchmark
+    fun findByScanner() = CookieScanner.find(header, "drill-session-id")
+
+    @Benchmark
+    fun findBySplit() = parseBySplit(header)["drill-session-id"]
+
+    @Benchmark
+    fun collectByScanner() = CookieScanner.collect(header, HeadersProcessor.DRILL_HEADER_PREFIX, HashMap())
+
+    @Benchmark
+    fun collectBySplit() = parseBySplit(header).filterKeys { it.startsWith(HeadersProcessor.DRILL_HEADER_PREFIX) }
+
+    private fun parseBySplit(header: String) = header
+        .split(";")
+        .mapNotNull {
+            val parts = it.trim().split("=", limit = 2)
+            if (parts.size == 2) parts[0] to parts[1] else null
+        }
+        .toMap()
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.util.concurrent.TimeUnit
+import kotlinx.benchmark.Benchmark
+import kotlinx.benchmark.BenchmarkMode
+import kotlinx.benchmark.Mode
+import kotlinx.benchmark.OutputTimeUnit
+import kotlinx.benchmark.Scope
+import kotlinx.benchmark.State
+
+/**
+ * Compares collecting drill headers by [DrillHeadersCollector] with copying all request headers to a new map
+ * as server hooks did before, for requests with and without drill headers,
+ * run by `benchmarkGc` task to get allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+class DrillHeadersCollectorBenchmark {
+
+    private val sessionHeader = "drill-session-id"
+    private val headers = listOf(
+        "Host" to "localhost:8080",
+        "User-Agent" to "Mozilla/5.0 (X11; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/115.0",
+        "Accept" to "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8",
+        "Accept-Language" to "en-US,en;q=0.5",
+        "Accept-Encoding" to "gzip, deflate, br",
+        "Content-Type" to "application/json",
+        "Content-Length" to "128",
+        "Connection" to "keep-alive",
+        "Cookie" to "JSESSIONID=0123456789ABCDEF; theme=dark",
+        "Cache-Control" to "no-cache",
+        "X-Request-Id" to "6f1c2d3e-4b5a-6978-8a9b-0c1d2e3f4a5b",
+        "drill-session-id" to "session-1",
+        "drill-test-name" to "test-1"
+    )
+    private val headersWithoutDrill = headers.filterNot { it.first.startsWith(HeadersProcessor.DRILL_HEADER_PREFIX) }
+
+    @Benchmark
+    fun collectDrillHeaders() = collect(headers)
+
+    @Benchmark
+    fun collectWithoutDrillHeaders() = collect(headersWithoutDrill)
+
+    @Benchmark
+    fun copyAllHeaders() = copy(headers)
+
+    @Benchmark
+    fun copyAllWithoutDrillHeaders() = copy(headersWithoutDrill)
+
+    private fun collect(headers: List<Pair<String, String>>): Int {
+        var collected: MutableMap<String, String>? = null
+        for ((name, value) in headers) {
+            if (DrillHeadersCollector.isCollected(name, sessionHeader)) {
+                collected = DrillHeadersCollector.collect(collected, name, value)
+            }
+        }
+        val size = collected?.size ?: 0
+        collected?.clear()
+        return size
+    }
+
+    private fun copy(headers: List<Pair<String, String>>): Int {
+        val allHeaders = HashMap<String, String>()
+        for ((name, value) in headers) {
+            allHeaders[name] = value
+        }
+        return allHeaders.size
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument.engine
+
+import java.util.concurrent.TimeUnit
+import kotlinx.benchmark.Benchmark
+import kotlinx.benchmark.BenchmarkMode
+import kotlinx.benchmark.Mode
+import kotlinx.benchmark.OutputTimeUnit
+import kotlinx.benchmark.Param
+import kotlinx.benchmark.Scope
+import kotlinx.benchmark.Setup
+import kotlinx.benchmark.State
+
+/**
+ * Compares javassist and ASM engines instrumenting the same class by the same hooks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class BytecodeEngineBenchmark {
+
+    @Param("javassist", "asm")
+    var engineName = ""
+
+    private val className = BenchmarkTarget::class.java.name
+    private val classBytes = BenchmarkTarget::class.java.getResourceAsStream("${BenchmarkTarget::class.java.simpleName}.class")!!
+        .use { it.readBytes() }
+    private val hooks = listOf(
+        MethodHook(
+            "handle",
+            "(Ljava/lang/String;I)Ljava/lang/String;",
+            HookPosition.ENTRY,
+            BenchmarkHooks::class.java.name,
+            BenchmarkHooks::onEntry.name,
+            listOf(1, 2)
+        ),
+        MethodHook(
+            "handle",
+            "(Ljava/lang/String;I)Ljava/lang/String;",
+            HookPosition.EXIT,
+            BenchmarkHooks::class.java.name,
+            BenchmarkHooks::onExit.name,
+            guarded = false
+        )
+    )
+    private lateinit var engine: BytecodeEngine
+
+    @Setup
+    fun setUp() {
+        engine = when (engineName) {
+            "asm" -> AsmBytecodeEngine
+            else -> JavassistBytecodeEngine
+        }
+    }
+
+    @Benchmark
+    fun instrument() = engine.instrument(className, classBytes, javaClass.classLoader, hooks)
+
+}
+
+class BenchmarkTarget {
+    private val names = mutableListOf<String>()
+
+    fun handle(name: String, times: Int): String {
+        if (times <= 0) return name
+        repeat(times) { names.add(name) }
+        return names.joinToString()
+    }
+
+    fun clear() = names.clear()
+}
+
+object BenchmarkHooks {
+    fun onEntry(name: String, times: Int) = Unit
+
+    fun onExit() = Unit
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.io.File
+import mu.KLogger
+import com.epam.drill.agent.common.configuration.AgentConfiguration
+import com.epam.drill.agent.common.configuration.AgentParameterDefinition
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_BYTECODE_ENGINE
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_ENABLED
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_TRANSFORM_CACHE_DIR
+
+/**
+ * Base of transformer objects independent of the way class bytes are instrumented.
+ *
+ * Caches transformation results and records statistics,
+ * class bytes are instrumented by [instrument] of [AbstractTransformerObject] (javassist)
+ * or [AbstractMethodHookTransformerObject] (configured bytecode engine).
+ */
+abstract class AbstractBytecodeTransformerObject(protected val agentConfiguration: AgentConfiguration) :
+    TransformerObject,
+    ClassPathProvider {
+
+    protected abstract val logger: KLogger
+
+    protected val statistics = TransformerStatisticsStorage[this]
+
+    override fun enabled(): Boolean {
+        return featureEnabled(INSTRUMENTATION_ENABLED)
+    }
+
+    private val transformCache by lazy {
+        agentConfiguration.parameters[INSTRUMENTATION_TRANSFORM_CACHE_DIR]?.let { TransformCache(File(it), agentVersion()) }
+    }
+
+    override fun transform(
+        className: String,
+        classFileBuffer: ByteArray,
+        loader: Any?,
+        protectionDomain: Any?
+    ): ByteArray? {
+        if (InstrumentationStateController.overridden && !enabled()) return classFileBuffer
+        val start = System.nanoTime()
+        val fingerprint = cacheFingerprint()
+        val cache = transformCache
+        val transformed = if (fingerprint == null || cache == null) {
+            instrument(className, classFileBuffer, loader, protectionDomain).bytes
+        } else {
+            val engine = agentConfiguration.parameters[INSTRUMENTATION_BYTECODE_ENGINE]
+            val key = cache.key(classFileBuffer, this::class.java.name, "$engine;$fingerprint")
+            cache[key] ?: instrument(className, classFileBuffer, loader, protectionDomain).let { instrumented ->
+                if (!instrumented.failed) instrumented.bytes?.let { cache[key] = it }
+                instrumented.bytes
+            }
+        }
+        statistics.recordTransform(start, (transformed?.size ?: classFileBuffer.size) - classFileBuffer.size)
+        return transformed
+    }
+
+    /**
+     * Instruments class bytes, failures are logged and recorded to [statistics].
+     */
+    protected abstract fun instrument(
+        className: String,
+        classFileBuffer: ByteArray,
+        loader: Any?,
+        protectionDomain: Any?
+    ): Instrumented
+
+    /**
+     * Result of [instrument], [failed] results are returned as is but never stored to the transform cache.
+     */
+    protected class Instrumented(val bytes: ByteArray?, val failed: Boolean = false)
+
+    /**
+     * Fingerprint of parameters used by the transformation, `null` if transformation results can't be cached
+     * or woven ahead of time by [StaticWeaver].
+     */
+    open fun cacheFingerprint(): String? = null
+
+    /**
+     * Returns `false` if transformed classes can't be retransformed by [InstrumentationStateController],
+     * e.g. if the transformation adds fields or methods.
+     */
+    open fun retransformable(): Boolean = true
+
+    protected fun featureEnabled(definition: AgentParameterDefinition<Boolean>): Boolean =
+        InstrumentationStateController[definition] ?: agentConfiguration.parameters[definition]
+
+    private fun agentVersion() = getClassPath().split(File.pathSeparator)
+        .map(::File)
+        .filter(File::exists)
+        .map { "${it.name}:${it.length()}:${it.lastModified()}" }
+        .plus(AbstractBytecodeTransformerObject::class.java.`package`?.implementationVersion ?: "")
+        .joinToString(";")
+
+    open fun logInjectingHeaders(headers: Map<String, String>) =
+        logger.trace { "logInjectingHeaders: Adding headers: $headers" }
+
+    open fun logError(exception: Exception, message: String) =
+        logger.error(exception) { "logError: $message" }
+
+}
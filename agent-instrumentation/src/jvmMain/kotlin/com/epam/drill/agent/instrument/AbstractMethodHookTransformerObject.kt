@@ -0,0 +1,56 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import com.epam.drill.agent.common.configuration.AgentConfiguration
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_BYTECODE_ENGINE
+import com.epam.drill.agent.instrument.engine.AsmBytecodeEngine
+import com.epam.drill.agent.instrument.engine.BytecodeEngine
+import com.epam.drill.agent.instrument.engine.JavassistBytecodeEngine
+import com.epam.drill.agent.instrument.engine.MethodHook
+
+/**
+ * Transformer object instrumenting classes by [MethodHook]s applied by the configured [BytecodeEngine].
+ */
+abstract class AbstractMethodHookTransformerObject(agentConfiguration: AgentConfiguration) :
+    AbstractBytecodeTransformerObject(agentConfiguration) {
+
+    abstract fun methodHooks(className: String): List<MethodHook>
+
+    override fun instrument(
+        className: String,
+        classFileBuffer: ByteArray,
+        loader: Any?,
+        protectionDomain: Any?
+    ): Instrumented {
+        val methodHooks = methodHooks(className).takeIf(List<MethodHook>::isNotEmpty) ?: return Instrumented(classFileBuffer)
+        val classLoader = loader ?: ClassLoader.getSystemClassLoader()
+        ClassPoolStorage.appendSystemClassPath(this::class.java.name, this)
+        return try {
+            Instrumented(bytecodeEngine().instrument(className, classFileBuffer, classLoader as? ClassLoader, methodHooks))
+        } catch (e: Exception) {
+            logger.error(e) { "transform: Error during instrumenting, class=$className" }
+            statistics.recordFailure()
+            Instrumented(classFileBuffer, failed = true)
+        }
+    }
+
+    protected fun bytecodeEngine(): BytecodeEngine = when (agentConfiguration.parameters[INSTRUMENTATION_BYTECODE_ENGINE]) {
+        "asm" -> AsmBytecodeEngine
+        else -> JavassistBytecodeEngine
+    }
+
+}
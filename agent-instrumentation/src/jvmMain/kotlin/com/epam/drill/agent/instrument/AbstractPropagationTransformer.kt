@@ -17,11 +17,17 @@ package com.epam.drill.agent.instrument
 
 import com.epam.drill.agent.common.configuration.AgentConfiguration
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.CONTEXT_PROPAGATION_ENABLED
+import com.epam.drill.agent.request.PropagationPolicy
 
 abstract class AbstractPropagationTransformer(
     agentConfiguration: AgentConfiguration
 ) : AbstractTransformerObject(agentConfiguration) {
+
+    init {
+        PropagationPolicy.configure(agentConfiguration.parameters)
+    }
+
     override fun enabled(): Boolean {
-        return super.enabled() && agentConfiguration.parameters[CONTEXT_PROPAGATION_ENABLED]
+        return super.enabled() && featureEnabled(CONTEXT_PROPAGATION_ENABLED)
     }
 }
\ No newline at end of file
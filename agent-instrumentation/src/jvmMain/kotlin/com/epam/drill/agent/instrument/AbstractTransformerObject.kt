@@ -15,47 +15,44 @@
  */
 package com.epam.drill.agent.instrument
 
-import com.epam.drill.agent.common.configuration.AgentConfiguration
-import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_ENABLED
 import java.io.ByteArrayInputStream
+import java.security.ProtectionDomain
 import javassist.ClassPool
 import javassist.CtBehavior
 import javassist.CtClass
-import javassist.LoaderClassPath
-import mu.KLogger
-import java.security.ProtectionDomain
-
-abstract class AbstractTransformerObject(protected val agentConfiguration: AgentConfiguration) :
-    TransformerObject,
-    ClassPathProvider {
-
-    protected abstract val logger: KLogger
+import com.epam.drill.agent.common.configuration.AgentConfiguration
 
-    override fun enabled(): Boolean {
-        return agentConfiguration.parameters[INSTRUMENTATION_ENABLED]
-    }
+/**
+ * Transformer object instrumenting classes by javassist [CtClass].
+ */
+abstract class AbstractTransformerObject(agentConfiguration: AgentConfiguration) :
+    AbstractBytecodeTransformerObject(agentConfiguration) {
 
-    override fun transform(
+    override fun instrument(
         className: String,
         classFileBuffer: ByteArray,
         loader: Any?,
         protectionDomain: Any?
-    ): ByteArray? = ClassPool.getDefault().run {
+    ): Instrumented {
         val classLoader = loader ?: ClassLoader.getSystemClassLoader()
-        this.appendClassPath(LoaderClassPath(classLoader as? ClassLoader))
-        if (this.getOrNull(this::class.java.name) == null) {
-            this.appendClassPath(getClassPath())
-        }
-        this.makeClass(ByteArrayInputStream(classFileBuffer), false).let {
-            val logError: (Throwable) -> Unit = { e ->
-                logger.error(e) { "transform: Error during instrumenting, class=${it.name}" }
+        ClassPoolStorage.appendSystemClassPath(this::class.java.name, this)
+        return ClassPoolStorage[classLoader as? ClassLoader].run {
+            this.makeClass(ByteArrayInputStream(classFileBuffer), false).let {
+                val logError: (Throwable) -> Unit = { e ->
+                    logger.error(e) { "transform: Error during instrumenting, class=${it.name}" }
+                    statistics.recordFailure()
+                }
+                val transform: (CtClass) -> Unit = { ctClass ->
+                    transform(className, ctClass, this, classLoader as? ClassLoader, protectionDomain as? ProtectionDomain)
+                }
+                try {
+                    it.defrost()
+                    val failed = it.runCatching(transform).onFailure(logError).isFailure
+                    Instrumented(it.toBytecode(), failed)
+                } finally {
+                    it.detach()
+                }
             }
-            val transform: (CtClass) -> Unit = { ctClass ->
-                transform(className, ctClass, this, classLoader as? ClassLoader, protectionDomain as? ProtectionDomain)
-            }
-            it.defrost()
-            it.runCatching(transform).onFailure(logError)
-            it.toBytecode()
         }
     }
 
@@ -71,21 +68,24 @@ abstract class AbstractTransformerObject(protected val agentConfiguration: Agent
         transform(className, ctClass)
     }
 
-    open fun logInjectingHeaders(headers: Map<String, String>) =
-        logger.trace { "logInjectingHeaders: Adding headers: $headers" }
-
-    open fun logError(exception: Exception, message: String) =
-        logger.error(exception) { "logError: $message" }
-
-    protected open fun CtBehavior.insertCatching(insert: CtBehavior.(String) -> Unit, code: String) = try {
-        insert(
-            """
+    /**
+     * Inserts code wrapped by exception handling, guarded code is skipped while [InstrumentationGuard] isn't active.
+     */
+    protected open fun CtBehavior.insertCatching(
+        insert: CtBehavior.(String) -> Unit,
+        code: String,
+        guarded: Boolean = true
+    ) = try {
+        val catchingCode = """
             try {
                 $code
             } catch (Exception e) {
                 ${this@AbstractTransformerObject::class.java.name}.INSTANCE.${this@AbstractTransformerObject::logError.name}(e, "Error in the injected code, method name: $name.");
             }
             """.trimIndent()
+        insert(
+            if (guarded) "if (${InstrumentationGuard::class.java.name}.${InstrumentationGuard::active.name}) {\n$catchingCode\n}"
+            else catchingCode
         )
     } catch (e: Exception) {
         logger.error(e) { "insertCatching: Can't insert code, method name: $name" }
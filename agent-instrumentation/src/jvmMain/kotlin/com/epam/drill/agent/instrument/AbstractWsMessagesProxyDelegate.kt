@@ -19,7 +19,6 @@ import kotlin.reflect.KCallable
 import javassist.ByteArrayClassPath
 import javassist.ClassPool
 import net.bytebuddy.ByteBuddy
-import net.bytebuddy.TypeCache
 import net.bytebuddy.description.method.MethodDescription
 import net.bytebuddy.description.modifier.Visibility
 import net.bytebuddy.dynamic.loading.ClassLoadingStrategy
@@ -31,7 +30,7 @@ import net.bytebuddy.matcher.ElementMatchers
 abstract class AbstractWsMessagesProxyDelegate {
 
     private val byteBuddy by lazy(::ByteBuddy)
-    private val proxyClassCache = TypeCache<String>()
+    private val proxyClassCache by lazy { ProxyClassCache(this::class.java.name) }
 
     protected fun createDelegatedGetterProxy(
         className: String,
@@ -63,7 +62,7 @@ abstract class AbstractWsMessagesProxyDelegate {
                 .load(clazz.classLoader, ClassLoadingStrategy.Default.INJECTION)
                 .also { classPool.appendClassPath(ByteArrayClassPath(proxyName, it.bytes)) }
                 .loaded
-        }
+        } ?: throw IllegalStateException("Proxy class $proxyName isn't generated")
     }
 
 }
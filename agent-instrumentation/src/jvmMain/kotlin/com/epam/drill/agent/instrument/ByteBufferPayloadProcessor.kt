@@ -0,0 +1,36 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.nio.ByteBuffer
+
+/**
+ * [PayloadProcessor] working with byte buffers without copying of the whole message.
+ */
+interface ByteBufferPayloadProcessor : PayloadProcessor {
+
+    /**
+     * Stores drill headers from the payload trailer and returns a view of [message] without the trailer,
+     * [message] is returned if it doesn't contain the trailer.
+     */
+    fun retrieveDrillHeaders(message: ByteBuffer): ByteBuffer
+
+    /**
+     * Returns a new buffer with remaining bytes of [message] followed by the payload trailer with drill headers.
+     */
+    fun storeDrillHeaders(message: ByteBuffer?): ByteBuffer?
+
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.util.WeakHashMap
+import javassist.ClassPool
+import javassist.LoaderClassPath
+
+/**
+ * Storage of javassist class pools used by transformer objects.
+ *
+ * Each application classloader gets its own pool with a single [LoaderClassPath],
+ * parented to the shared system pool. Pools are weakly keyed by classloader,
+ * so a pool is released together with its classloader.
+ */
+object ClassPoolStorage {
+
+    private val systemPool = ClassPool(true)
+    private val loaderPools = WeakHashMap<ClassLoader, ClassPool>()
+
+    operator fun get(loader: ClassLoader?): ClassPool = loader?.let {
+        synchronized(loaderPools) {
+            loaderPools.getOrPut(it) { ClassPool(systemPool).apply { appendClassPath(LoaderClassPath(it)) } }
+        }
+    } ?: systemPool
+
+    fun appendSystemClassPath(className: String, classPathProvider: ClassPathProvider) = synchronized(systemPool) {
+        if (systemPool.getOrNull(className) == null) systemPool.appendClassPath(classPathProvider.getClassPath())
+    }.let {}
+
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.lang.instrument.Instrumentation
+
+/**
+ * Access to JVM class retransformation used by [InstrumentationStateController].
+ */
+interface ClassRetransformer {
+    fun loadedClasses(): Array<Class<*>>
+    fun isModifiable(clazz: Class<*>): Boolean
+    fun retransform(classes: Array<Class<*>>)
+}
+
+class InstrumentationClassRetransformer(private val instrumentation: Instrumentation) : ClassRetransformer {
+    override fun loadedClasses(): Array<Class<*>> = instrumentation.allLoadedClasses
+    override fun isModifiable(clazz: Class<*>) = instrumentation.isModifiableClass(clazz)
+    override fun retransform(classes: Array<Class<*>>) = instrumentation.retransformClasses(*classes)
+}
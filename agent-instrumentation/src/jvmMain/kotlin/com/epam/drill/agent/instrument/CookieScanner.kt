@@ -0,0 +1,66 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+/**
+ * Single-pass scanner of `Cookie` header values.
+ *
+ * Cookies are separated by `;`, surrounding whitespaces are ignored and name is separated from value by the first `=`.
+ * Only names and values of matched cookies are materialized as strings, other cookies are skipped by index.
+ */
+object CookieScanner {
+
+    /**
+     * Returns value of the last cookie with [name] or `null` if there is no such cookie.
+     */
+    fun find(header: String, name: String): String? {
+        var value: String? = null
+        forEachCookie(header) { start, separator, end ->
+            if (separator - start == name.length && header.regionMatches(start, name, 0, name.length)) {
+                value = header.substring(separator + 1, end)
+            }
+        }
+        return value
+    }
+
+    /**
+     * Puts cookies with names starting with [prefix] to [cookies].
+     */
+    fun <T : MutableMap<String, String>> collect(header: String, prefix: String, cookies: T): T = cookies.also {
+        forEachCookie(header) { start, separator, end ->
+            if (separator - start >= prefix.length && header.regionMatches(start, prefix, 0, prefix.length)) {
+                it[header.substring(start, separator)] = header.substring(separator + 1, end)
+            }
+        }
+    }
+
+    private inline fun forEachCookie(header: String, action: (start: Int, separator: Int, end: Int) -> Unit) {
+        var position = 0
+        while (position < header.length) {
+            var delimiter = header.indexOf(';', position)
+            if (delimiter < 0) delimiter = header.length
+            var start = position
+            var end = delimiter
+            while (start < end && header[start].isWhitespace()) start++
+            while (end > start && header[end - 1].isWhitespace()) end--
+            var separator = start
+            while (separator < end && header[separator] != '=') separator++
+            if (separator < end) action(start, separator, end)
+            position = delimiter + 1
+        }
+    }
+
+}
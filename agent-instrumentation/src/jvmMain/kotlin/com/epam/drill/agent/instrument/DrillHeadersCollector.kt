@@ -0,0 +1,52 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+/**
+ * Collector of drill headers used by server hooks instead of copying all request headers.
+ *
+ * Header names are matched without allocation, only values of matched headers are retrieved
+ * and stored to a map reused by the request thread. Hooks should clear the map after storing headers,
+ * the map is also cleared when it's taken for the first collected header, so headers left by a failed hook aren't leaked.
+ */
+object DrillHeadersCollector {
+
+    private const val COOKIE_HEADER = "Cookie"
+
+    private val buffers = ThreadLocal.withInitial { HashMap<String, String>(8) }
+
+    @JvmStatic
+    fun isCollected(headerName: CharSequence?, sessionHeader: String) = headerName != null && (
+            startsWithIgnoreCase(headerName, HeadersProcessor.DRILL_HEADER_PREFIX)
+                    || headerName.length == sessionHeader.length && startsWithIgnoreCase(headerName, sessionHeader)
+                    || headerName.length == COOKIE_HEADER.length && startsWithIgnoreCase(headerName, COOKIE_HEADER))
+
+    @JvmStatic
+    fun collect(headers: MutableMap<String, String>?, headerName: String, header: String?): MutableMap<String, String>? = when {
+        header == null -> headers
+        headerName.equals(COOKIE_HEADER, true) && !header.contains(HeadersProcessor.DRILL_HEADER_PREFIX) -> headers
+        else -> (headers ?: buffers.get().apply { clear() }).apply { put(headerName, header) }
+    }
+
+    private fun startsWithIgnoreCase(chars: CharSequence, prefix: String): Boolean {
+        if (chars.length < prefix.length) return false
+        for (i in prefix.indices) {
+            if (!chars[i].equals(prefix[i], true)) return false
+        }
+        return true
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.nio.ByteBuffer
+
+/**
+ * Drill payload trailer appended to messages by [PayloadProcessor] implementations.
+ *
+ * The trailer consists of [PayloadProcessor.PAYLOAD_PREFIX], drill headers as `name=value` lines
+ * and [PayloadProcessor.PAYLOAD_SUFFIX]. Buffers are read by absolute indexes, so heap and direct buffers
+ * are searched in place.
+ */
+object DrillPayloadTrailer {
+
+    private val prefixBytes = PayloadProcessor.PAYLOAD_PREFIX.encodeToByteArray()
+    private val suffixBytes = PayloadProcessor.PAYLOAD_SUFFIX.encodeToByteArray()
+    private val prefixShifts = IntArray(256) { prefixBytes.size }.also { shifts ->
+        for (index in prefixBytes.lastIndex downTo 1) shifts[prefixBytes[index].toInt() and 0xff] = index
+    }
+
+    /**
+     * Returns the absolute index of the trailer in [message] or -1 if the message doesn't end with it.
+     *
+     * The trailer prefix is searched from the end by Boyer-Moore-Horspool algorithm mirrored for backward search.
+     */
+    @JvmStatic
+    fun indexOf(message: ByteBuffer): Int {
+        val end = message.limit() - suffixBytes.size
+        if (end - message.position() < prefixBytes.size) return -1
+        for (index in suffixBytes.indices) {
+            if (message.get(end + index) != suffixBytes[index]) return -1
+        }
+        var start = end - prefixBytes.size
+        while (start >= message.position()) {
+            var index = prefixBytes.lastIndex
+            while (index >= 0 && message.get(start + index) == prefixBytes[index]) index--
+            if (index < 0) return start
+            start -= prefixShifts[message.get(start).toInt() and 0xff]
+        }
+        return -1
+    }
+
+    /**
+     * Decodes drill headers of the trailer found at [index] of [message], only the trailer region is decoded.
+     */
+    @JvmStatic
+    fun headers(message: ByteBuffer, index: Int) = message.duplicate()
+        .also { it.limit(message.limit() - suffixBytes.size) }
+        .also { it.position(index + prefixBytes.size) }
+        .let { Charsets.UTF_8.decode(it).toString() }
+        .let(::headers)
+
+    fun headers(payload: String) = payload.split("\n")
+        .filter(String::isNotEmpty)
+        .associate { it.substringBefore("=") to it.substringAfter("=", "") }
+
+    /**
+     * Returns the trailer with [headers], the trailer is empty if there are no drill headers.
+     */
+    fun trailer(headers: Map<String, String>?) = (headers ?: emptyMap())
+        .map { (k, v) -> "$k=$v" }
+        .joinToString("\n", PayloadProcessor.PAYLOAD_PREFIX, PayloadProcessor.PAYLOAD_SUFFIX)
+
+}
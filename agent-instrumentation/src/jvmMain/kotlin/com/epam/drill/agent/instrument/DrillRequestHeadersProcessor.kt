@@ -15,10 +15,8 @@
  */
 package com.epam.drill.agent.instrument
 
-import java.util.Objects
 import mu.KLogger
 import mu.KotlinLogging
-import com.epam.drill.agent.common.request.DrillRequest
 import com.epam.drill.agent.common.request.HeadersRetriever
 import com.epam.drill.agent.common.request.RequestHolder
 
@@ -33,56 +31,62 @@ open class DrillRequestHeadersProcessor(
 
     override fun storeHeaders(headers: Map<String, String>) {
         try {
-            logger.trace { "storeHeaders: Unfiltered headers: $headers" }
-
-            val sessionHeaderName = headersRetriever.sessionHeader()
-            val sessionIdFromHeader = headers[sessionHeaderName]
-
-            if (sessionIdFromHeader != null) {
-                val filtered = headers
-                    .filterKeys(Objects::nonNull)
-                    .filter { it.key.startsWith(HeadersProcessor.DRILL_HEADER_PREFIX) }
-                logger.trace { "storeHeaders: from headers, sessionId=$sessionIdFromHeader: $filtered" }
-                requestHolder.store(DrillRequest(sessionIdFromHeader, filtered))
-            } else {
-                val cookieHeader = headers.entries
-                    .firstOrNull { it.key.equals("Cookie", ignoreCase = true) }
-                    ?.value
-                val cookieMap = cookieHeader
-                    ?.split(";")
-                    ?.mapNotNull {
-                        val parts = it.trim().split("=", limit = 2)
-                        if (parts.size == 2) parts[0] to parts[1] else null
-                    }
-                    ?.toMap()
-                    ?: emptyMap()
-
-                val sessionIdFromCookie = cookieMap["drill-session-id"]
-                if (sessionIdFromCookie != null) {
-                    val filtered = cookieMap
-                        .filterKeys { it.startsWith(HeadersProcessor.DRILL_HEADER_PREFIX) }
-                    logger.trace { "storeHeaders: from cookies, sessionId=$sessionIdFromCookie: $filtered" }
-
-                    requestHolder.store(DrillRequest(sessionIdFromCookie, filtered))
-                }
-            }
+            storeSession(headers)
         } catch (e: Exception) {
             logger.error(e) { "storeHeaders: Error while storing headers" }
         }
     }
 
+    override fun storeRequestHeaders(headers: Map<String, String>?) {
+        try {
+            if (headers == null || !storeSession(headers)) requestHolder.storeInitial()
+        } catch (e: Exception) {
+            logger.error(e) { "storeRequestHeaders: Error while storing headers" }
+        }
+    }
+
+    private fun storeSession(headers: Map<String, String>): Boolean {
+        logger.trace { "storeHeaders: Unfiltered headers: $headers" }
+
+        val sessionHeaderName = headersRetriever.sessionHeader()
+        val sessionIdFromHeader = headers[sessionHeaderName]
+
+        if (sessionIdFromHeader != null) {
+            val drillRequest = DrillRequestInterner.intern(sessionIdFromHeader, headers, sessionHeaderName)
+            logger.trace { "storeHeaders: from headers, sessionId=$sessionIdFromHeader: ${drillRequest.headers}" }
+            requestHolder.store(drillRequest)
+            return true
+        }
+        val cookieHeader = headers.entries
+            .firstOrNull { it.key.equals("Cookie", ignoreCase = true) }
+            ?.value
+        val sessionIdFromCookie = cookieHeader?.let { CookieScanner.find(it, "drill-session-id") }
+        if (cookieHeader == null || sessionIdFromCookie == null) return false
+        val drillCookies = CookieScanner.collect(cookieHeader, HeadersProcessor.DRILL_HEADER_PREFIX, HashMap())
+        val drillRequest = DrillRequestInterner.intern(sessionIdFromCookie, drillCookies, sessionHeaderName)
+        logger.trace { "storeHeaders: from cookies, sessionId=$sessionIdFromCookie: ${drillRequest.headers}" }
+
+        requestHolder.store(drillRequest)
+        return true
+    }
+
     override fun retrieveHeaders() = try {
         requestHolder.retrieve()?.let { drillRequest ->
-            logger.trace { "retrieveHeaders: Raw DrillRequest headers: ${drillRequest.headers}" }
+            val headers = drillRequest.headers
+            if (headers is DrillHeaders && headers.sessionHeader == headersRetriever.sessionHeader()) {
+                headers
+            } else {
+                logger.trace { "retrieveHeaders: Raw DrillRequest headers: ${drillRequest.headers}" }
 
-            val filtered = drillRequest.headers
-                .filter { it.key.startsWith(HeadersProcessor.DRILL_HEADER_PREFIX) }
+                val filtered = drillRequest.headers
+                    .filter { it.key.startsWith(HeadersProcessor.DRILL_HEADER_PREFIX) }
 
-            val result = filtered + (headersRetriever.sessionHeader() to drillRequest.drillSessionId)
+                val result = filtered + (headersRetriever.sessionHeader() to drillRequest.drillSessionId)
 
-            logger.trace { "retrieveHeaders: Returning headers, sessionId=${drillRequest.drillSessionId}: $result" }
+                logger.trace { "retrieveHeaders: Returning headers, sessionId=${drillRequest.drillSessionId}: $result" }
 
-            result
+                result
+            }
         }
     } catch (e: Exception) {
         logger.error(e) { "retrieveHeaders: Error while loading drill headers" }
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.util.AbstractMap.SimpleImmutableEntry
+import java.util.concurrent.atomic.AtomicReferenceArray
+import com.epam.drill.agent.common.request.DrillRequest
+
+/**
+ * Interner of drill requests created from incoming headers.
+ *
+ * Requests with equal session ids and drill headers share one [DrillRequest] instance,
+ * its headers are stored as [DrillHeaders] already containing the session header,
+ * so they can be propagated to outgoing calls without copying.
+ * Interned requests are kept in a direct-mapped cache of [SIZE] slots indexed by the hash of drill headers,
+ * a new request replaces the request in its slot. Incoming headers are compared with the cached request in place,
+ * so nothing is allocated if the request is already interned.
+ */
+object DrillRequestInterner {
+
+    private const val SIZE = 1024
+
+    private val slots = AtomicReferenceArray<InternedRequest?>(SIZE)
+
+    fun intern(sessionId: String, headers: Map<String, String>, sessionHeader: String): DrillRequest {
+        var hash = sessionHeader.hashCode() xor sessionId.hashCode()
+        var count = 1
+        for ((key, value) in headers) {
+            if (!isPropagated(key, sessionHeader)) continue
+            hash += key.hashCode() xor value.hashCode()
+            count++
+        }
+        val index = (hash xor (hash ushr 16)) and (SIZE - 1)
+        val interned = slots[index]
+        if (interned != null && interned.hash == hash && interned.matches(sessionId, headers, sessionHeader, count)) {
+            return interned.request
+        }
+        val outgoing = LinkedHashMap<String, String>(count)
+        for ((key, value) in headers) {
+            if (isPropagated(key, sessionHeader)) outgoing[key] = value
+        }
+        outgoing[sessionHeader] = sessionId
+        return DrillRequest(sessionId, DrillHeaders(sessionHeader, outgoing)).also {
+            slots[index] = InternedRequest(hash, it)
+        }
+    }
+
+    private fun isPropagated(key: String?, sessionHeader: String) =
+        key != null && key != sessionHeader && key.startsWith(HeadersProcessor.DRILL_HEADER_PREFIX)
+
+    private class InternedRequest(val hash: Int, val request: DrillRequest) {
+
+        fun matches(sessionId: String, headers: Map<String, String>, sessionHeader: String, count: Int): Boolean {
+            val internedHeaders = request.headers as DrillHeaders
+            if (request.drillSessionId != sessionId) return false
+            if (internedHeaders.sessionHeader != sessionHeader || internedHeaders.size != count) return false
+            for ((key, value) in headers) {
+                if (isPropagated(key, sessionHeader) && internedHeaders[key] != value) return false
+            }
+            return true
+        }
+
+    }
+
+}
+
+/**
+ * Immutable array-backed drill headers shared between drill requests with identical header sets.
+ *
+ * Headers always contain the [sessionHeader] with the session id of the request.
+ */
+class DrillHeaders(val sessionHeader: String, headers: Map<String, String>) : AbstractMap<String, String>() {
+
+    private val array: Array<Map.Entry<String, String>> = headers.entries
+        .map { SimpleImmutableEntry(it.key, it.value) }
+        .toTypedArray()
+
+    override val entries: Set<Map.Entry<String, String>> = object : AbstractSet<Map.Entry<String, String>>() {
+        override val size get() = array.size
+        override fun iterator() = array.iterator()
+    }
+
+    override val size get() = array.size
+
+    override fun get(key: String): String? {
+        for (entry in array) {
+            if (entry.key == key) return entry.value
+        }
+        return null
+    }
+
+    override fun containsKey(key: String) = get(key) != null
+
+}
@@ -15,42 +15,47 @@
  */
 package com.epam.drill.agent.instrument
 
+import java.nio.ByteBuffer
+
 open class DrillRequestPayloadProcessor(
     private val enabled: () -> Boolean = { true },
     private val headersProcessor: HeadersProcessor
-) : PayloadProcessor {
-
-    private val payloadPrefixBytes = PayloadProcessor.PAYLOAD_PREFIX.encodeToByteArray()
+) : ByteBufferPayloadProcessor {
 
     override fun retrieveDrillHeaders(message: String) = message.takeIf { it.endsWith(PayloadProcessor.PAYLOAD_SUFFIX) }
-        ?.removeSuffix(PayloadProcessor.PAYLOAD_SUFFIX)
-        ?.substringAfter(PayloadProcessor.PAYLOAD_PREFIX)
-        ?.split("\n")
-        ?.associate { it.substringBefore("=") to it.substringAfter("=", "") }
-        ?.also(headersProcessor::storeHeaders)
-        ?.let { message.substringBefore(PayloadProcessor.PAYLOAD_PREFIX) }
+        ?.lastIndexOf(PayloadProcessor.PAYLOAD_PREFIX)
+        ?.takeIf { it != -1 }
+        ?.also { storeHeaders(DrillPayloadTrailer.headers(message.substring(it + PayloadProcessor.PAYLOAD_PREFIX.length, message.length - PayloadProcessor.PAYLOAD_SUFFIX.length))) }
+        ?.let { message.substring(0, it) }
+        ?: message
+
+    override fun retrieveDrillHeaders(message: ByteArray) = retrieveDrillHeadersIndex(message)
+        ?.let { message.copyOf(it) }
         ?: message
 
-    override fun retrieveDrillHeaders(message: ByteArray) =
-        retrieveDrillHeaders(message.decodeToString()).encodeToByteArray()
+    override fun retrieveDrillHeadersIndex(message: ByteArray) = ByteBuffer.wrap(message).let { buffer ->
+        DrillPayloadTrailer.indexOf(buffer).takeIf { it != -1 }?.also { storeHeaders(DrillPayloadTrailer.headers(buffer, it)) }
+    }
+
+    override fun retrieveDrillHeaders(message: ByteBuffer): ByteBuffer = DrillPayloadTrailer.indexOf(message)
+        .takeIf { it != -1 }
+        ?.also { storeHeaders(DrillPayloadTrailer.headers(message, it)) }
+        ?.let { index -> message.duplicate().also { it.limit(index) }.slice() }
+        ?: message
 
-    override fun retrieveDrillHeadersIndex(message: ByteArray) = message.decodeToString()
-        .takeIf { it.endsWith(PayloadProcessor.PAYLOAD_SUFFIX) }
-        ?.removeSuffix(PayloadProcessor.PAYLOAD_SUFFIX)
-        ?.substringAfter(PayloadProcessor.PAYLOAD_PREFIX)
-        ?.split("\n")
-        ?.associate { it.substringBefore("=") to it.substringAfter("=", "") }
-        ?.also(headersProcessor::storeHeaders)
-        ?.let { drillPayloadBytesIndex(message) }
+    override fun storeDrillHeaders(message: String?) = message?.plus(payloadTrailer())
 
-    override fun storeDrillHeaders(message: String?) = message
-        ?.let { headersProcessor.retrieveHeaders() }
-        ?.map { (k, v) -> "$k=$v" }
-        ?.joinToString("\n", PayloadProcessor.PAYLOAD_PREFIX, PayloadProcessor.PAYLOAD_SUFFIX)
-        ?.let(message::plus)
+    override fun storeDrillHeaders(message: ByteArray?) = message?.plus(payloadTrailer().encodeToByteArray())
 
-    override fun storeDrillHeaders(message: ByteArray?) = message
-        ?.let { storeDrillHeaders(message.decodeToString())!!.encodeToByteArray() }
+    override fun storeDrillHeaders(message: ByteBuffer?) = message?.let { buffer ->
+        payloadTrailer().encodeToByteArray().let { trailer ->
+            ByteBuffer.allocate(buffer.remaining() + trailer.size).also {
+                it.put(buffer.duplicate())
+                it.put(trailer)
+                it.flip()
+            }
+        }
+    }
 
     override fun isPayloadProcessingEnabled() = enabled()
 
@@ -59,14 +64,10 @@ open class DrillRequestPayloadProcessor(
                 && headers.containsKey(PayloadProcessor.HEADER_WS_PER_MESSAGE)
                 && headers[PayloadProcessor.HEADER_WS_PER_MESSAGE].toBoolean()
 
-    private fun drillPayloadBytesIndex(bytes: ByteArray): Int {
-        for (currentIndex in IntRange(0, bytes.lastIndex - payloadPrefixBytes.lastIndex)) {
-            val regionMatches = payloadPrefixBytes.foldIndexed(true) { index, acc, byte ->
-                acc && bytes[currentIndex + index] == byte
-            }
-            if (regionMatches) return currentIndex
-        }
-        return -1
-    }
+    private fun payloadTrailer() = DrillPayloadTrailer.trailer(headersProcessor.retrieveHeaders())
+
+    private fun storeHeaders(headers: Map<String, String>) = headers
+        .takeIf(Map<String, String>::isNotEmpty)
+        ?.let(headersProcessor::storeHeaders)
 
 }
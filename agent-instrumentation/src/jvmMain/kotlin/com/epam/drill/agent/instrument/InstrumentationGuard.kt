@@ -0,0 +1,66 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+/**
+ * Global guard of injected hooks.
+ *
+ * Every guarded hook starts with a read of [active] and skips its code if it's `false`,
+ * so while there are no active sessions request threads pay a single volatile read per hook.
+ * Hooks cleaning up state stored by other hooks aren't guarded. Hooks removing drill payload trailers
+ * from received messages aren't guarded either, peers keep appending trailers while the guard is inactive.
+ */
+object InstrumentationGuard {
+
+    @JvmField
+    @Volatile
+    var active: Boolean = true
+
+}
+
+/**
+ * Controller switching [InstrumentationGuard] by the state of test sessions.
+ *
+ * The guard stays active until the controller gets session state for the first time.
+ */
+object SessionStateController {
+
+    private val activeSessions = mutableSetOf<String>()
+
+    @Synchronized
+    fun sessionStarted(sessionId: String) {
+        activeSessions.add(sessionId)
+        updateGuard()
+    }
+
+    @Synchronized
+    fun sessionFinished(sessionId: String) {
+        activeSessions.remove(sessionId)
+        updateGuard()
+    }
+
+    @Synchronized
+    fun setActiveSessions(sessionIds: Collection<String>) {
+        activeSessions.clear()
+        activeSessions.addAll(sessionIds)
+        updateGuard()
+    }
+
+    private fun updateGuard() {
+        InstrumentationGuard.active = activeSessions.isNotEmpty()
+    }
+
+}
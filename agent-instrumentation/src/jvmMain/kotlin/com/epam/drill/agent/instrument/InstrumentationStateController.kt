@@ -0,0 +1,116 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.util.concurrent.ConcurrentHashMap
+import com.epam.drill.agent.common.configuration.AgentParameterDefinition
+import mu.KotlinLogging
+
+/**
+ * Controller of instrumentation features at runtime.
+ *
+ * Feature parameters (e.g. `INSTRUMENTATION_SSL_ENABLED`) can be overridden by [setEnabled],
+ * after that loaded classes affected by the change are retransformed, so injected code is removed
+ * from (or restored to) the classes, rather than short-circuited inside of them.
+ * Retransformation is performed by the JVM at a safepoint, methods being executed complete their current invocation
+ * with the previous code.
+ */
+object InstrumentationStateController {
+
+    private const val RETRANSFORM_BATCH_SIZE = 100
+
+    private val logger = KotlinLogging.logger {}
+    private val overrides = ConcurrentHashMap<String, Boolean>()
+    private var transformers: List<TransformerObject> = emptyList()
+    private var retransformer: ClassRetransformer? = null
+
+    /**
+     * Override being checked by [setEnabled], visible only to the checking thread.
+     */
+    @Volatile
+    private var candidate: Candidate? = null
+
+    @Volatile
+    var overridden = false
+        private set
+
+    operator fun get(definition: AgentParameterDefinition<Boolean>): Boolean? {
+        val candidate = candidate
+        if (candidate != null && candidate.name == definition.name && candidate.thread === Thread.currentThread()) {
+            return candidate.enabled
+        }
+        return overrides[definition.name]
+    }
+
+    @Synchronized
+    fun initialize(transformers: Collection<TransformerObject>, retransformer: ClassRetransformer) {
+        this.transformers = transformers.toList()
+        this.retransformer = retransformer
+    }
+
+    /**
+     * Overrides value of a feature parameter and retransforms loaded classes affected by it.
+     *
+     * Affected transformer objects are found with the candidate value visible only to the current thread,
+     * so the override is published to transformations only after the change is accepted.
+     *
+     * @return `false` if the change is rejected, because it affects transformer objects
+     * which aren't [AbstractBytecodeTransformerObject.retransformable]
+     */
+    @Synchronized
+    fun setEnabled(definition: AgentParameterDefinition<Boolean>, enabled: Boolean): Boolean {
+        val retransformer = this.retransformer ?: throw IllegalStateException("Controller isn't initialized")
+        val previousStates = transformers.map(TransformerObject::enabled)
+        val changed = try {
+            candidate = Candidate(Thread.currentThread(), definition.name, enabled)
+            transformers.filterIndexed { index, transformer -> transformer.enabled() != previousStates[index] }
+        } finally {
+            candidate = null
+        }
+        changed.filterNot { (it as? AbstractBytecodeTransformerObject)?.retransformable() ?: true }.takeIf(List<*>::isNotEmpty)?.let {
+            logger.warn { "setEnabled: Can't change ${definition.name}, transformers can't be retransformed: $it" }
+            return false
+        }
+        overrides[definition.name] = enabled
+        overridden = true
+        logger.info { "setEnabled: ${definition.name} changed to $enabled, affected transformers: $changed" }
+        if (changed.isNotEmpty()) retransform(retransformer, TransformerDispatcher(changed))
+        return true
+    }
+
+    private fun retransform(retransformer: ClassRetransformer, dispatcher: TransformerDispatcher) {
+        val classes = retransformer.loadedClasses().filter { clazz ->
+            !clazz.isArray && !clazz.isPrimitive && retransformer.isModifiable(clazz) && dispatcher.permitted(
+                clazz.name.toInternalName(),
+                clazz.superclass?.name?.toInternalName(),
+                clazz.interfaces.map { it.name.toInternalName() }.toTypedArray()
+            ).isNotEmpty()
+        }
+        logger.info { "retransform: Retransforming ${classes.size} classes" }
+        classes.chunked(RETRANSFORM_BATCH_SIZE).forEach { batch ->
+            try {
+                retransformer.retransform(batch.toTypedArray())
+            } catch (e: Throwable) {
+                logger.error(e) { "retransform: Error during retransforming classes: ${batch.map(Class<*>::getName)}" }
+            }
+        }
+    }
+
+    private fun String.toInternalName() = replace('.', '/')
+
+    private class Candidate(val thread: Thread, val name: String, val enabled: Boolean)
+
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+/**
+ * Names of classes, superclasses and interfaces which can be permitted by a transformer object.
+ *
+ * Used by [TransformerDispatcher] to select candidate transformer objects by hash lookups,
+ * the final decision is still made by [TransformerObject.permit].
+ */
+data class PermitIndex(
+    val classNames: Set<String> = emptySet(),
+    val superNames: Set<String> = emptySet(),
+    val interfaces: Set<String> = emptySet()
+) {
+    operator fun plus(other: PermitIndex) = PermitIndex(
+        classNames + other.classNames,
+        superNames + other.superNames,
+        interfaces + other.interfaces
+    )
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.util.WeakHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import net.bytebuddy.TypeCache
+import mu.KotlinLogging
+
+interface ProxyClassCacheMBean {
+    val size: Int
+    val generatedClasses: Long
+    val generationTimeMillis: Long
+    val rejectedClasses: Long
+}
+
+/**
+ * Cache of generated proxy classes keyed by classloader and proxied type name.
+ *
+ * Classloaders and proxy classes are referenced weakly, so cached proxy classes don't prevent unloading of classloaders.
+ * The number of proxy classes generated for each classloader is limited by [maxSize]: proxy classes live as long as
+ * their classloader, so they can't be evicted. If the limit of a classloader is reached, no more proxy classes are
+ * generated for it and `null` is returned instead, while proxy classes of other classloaders are still generated.
+ */
+class ProxyClassCache(val name: String, @Volatile var maxSize: Int = Int.MAX_VALUE) : ProxyClassCacheMBean {
+
+    private val logger = KotlinLogging.logger {}
+    private val cache = TypeCache<String>(TypeCache.Sort.WEAK)
+    private val loaderSizes = WeakHashMap<ClassLoader?, Int>()
+    private val generatedCounter = AtomicLong()
+    private val generationNanosCounter = AtomicLong()
+    private val rejectedCounter = AtomicLong()
+
+    init {
+        TransformerStatisticsStorage.addProxyClassCache(this)
+    }
+
+    override val size get() = synchronized(this) { loaderSizes.values.sum() }
+    override val generatedClasses get() = generatedCounter.get()
+    override val generationTimeMillis get() = TimeUnit.NANOSECONDS.toMillis(generationNanosCounter.get())
+    override val rejectedClasses get() = rejectedCounter.get()
+
+    fun findOrInsert(loader: ClassLoader?, typeName: String, generate: () -> Class<*>): Class<*>? =
+        cache.find(loader, typeName) ?: insert(loader, typeName, generate)
+
+    @Synchronized
+    private fun insert(loader: ClassLoader?, typeName: String, generate: () -> Class<*>): Class<*>? {
+        cache.find(loader, typeName)?.let { return it }
+        val loaderSize = loaderSizes[loader] ?: 0
+        if (loaderSize >= maxSize) {
+            rejectedCounter.incrementAndGet()
+            logger.debug { "insert: Proxy classes limit $maxSize is reached for $name and $loader, proxy for $typeName isn't generated" }
+            return null
+        }
+        val start = System.nanoTime()
+        val proxyClass = generate()
+        generationNanosCounter.addAndGet(System.nanoTime() - start)
+        generatedCounter.incrementAndGet()
+        loaderSizes[loader] = loaderSize + 1
+        if (loaderSize + 1 == maxSize) logger.warn {
+            "insert: Proxy classes limit $maxSize is reached for $name and $loader, no more proxy classes are generated for it"
+        }
+        return cache.insert(loader, typeName, proxyClass)
+    }
+
+    override fun toString() = "$name: size=$size, generatedClasses=$generatedClasses, " +
+            "generationTime=${generationTimeMillis}ms, rejectedClasses=$rejectedClasses"
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.io.File
+import java.net.URLClassLoader
+import java.util.jar.JarEntry
+import java.util.jar.JarFile
+import java.util.jar.JarOutputStream
+import net.bytebuddy.utility.OpenedClassReader
+import mu.KotlinLogging
+
+/**
+ * Weaver applying transformer objects to jars ahead of time.
+ *
+ * Writes instrumented jar with [WovenManifest] stored to [WovenManifest.ENTRY_NAME] and original bytes of woven classes
+ * stored under [WovenManifest.ORIGINAL_PREFIX], transformer objects listed in the manifest are skipped by [TransformerDispatcher]
+ * at runtime unless their parameters have changed since weaving.
+ * Only enabled transformer objects providing [AbstractBytecodeTransformerObject.cacheFingerprint] are applied,
+ * as results of other transformer objects depend on the runtime state.
+ */
+class StaticWeaver(transformers: Collection<TransformerObject>) {
+
+    private val logger = KotlinLogging.logger {}
+    private val transformers = transformers.filter { it.enabled() && (it as? AbstractBytecodeTransformerObject)?.cacheFingerprint() != null }
+    private val dispatcher = TransformerDispatcher(this.transformers)
+
+    fun weave(input: File, output: File, classpath: List<File> = emptyList()): WovenManifest {
+        JarFile(input).use { jar -> return weave(jar, input, output, classpath) }
+    }
+
+    private fun weave(jar: JarFile, input: File, output: File, classpath: List<File>): WovenManifest {
+        if (jar.entries().asSequence().any { it.name.startsWith("META-INF/") && it.name.endsWith(".SF") }) {
+            logger.warn { "weave: Signed jar can't be woven, copying as is: $input" }
+            input.copyTo(output, true)
+            return WovenManifest.EMPTY
+        }
+        val inputManifest = jar.getJarEntry(WovenManifest.ENTRY_NAME)?.let(jar::getInputStream)?.use(WovenManifest::load)
+            ?: WovenManifest.EMPTY
+        val wovenClasses = inputManifest.classes.toMutableMap()
+        val urls = (listOf(input) + classpath).map { it.toURI().toURL() }.toTypedArray()
+        return URLClassLoader(urls, this::class.java.classLoader).use { loader ->
+            JarOutputStream(output.outputStream().buffered()).use { out ->
+                jar.entries().asSequence().filter { it.name != WovenManifest.ENTRY_NAME }.forEach { entry ->
+                    val bytes = jar.getInputStream(entry).use { it.readBytes() }
+                    val isClass = entry.name.endsWith(".class") && !entry.name.startsWith("META-INF/")
+                    val className = entry.name.removeSuffix(".class")
+                    val woven = if (isClass && !inputManifest.isWoven(className)) {
+                        weaveClass(className, bytes, loader)?.also { (_, applied) -> wovenClasses[className] = applied }?.first
+                    } else null
+                    out.putNextEntry(JarEntry(entry.name).apply { time = entry.time })
+                    out.write(woven ?: bytes)
+                    out.closeEntry()
+                    if (woven != null) {
+                        out.putNextEntry(JarEntry(WovenManifest.ORIGINAL_PREFIX + entry.name).apply { time = entry.time })
+                        out.write(bytes)
+                        out.closeEntry()
+                    }
+                }
+                val manifest = WovenManifest(
+                    wovenClasses,
+                    inputManifest.fingerprints + transformers.associate {
+                        it::class.java.name to (it as AbstractBytecodeTransformerObject).cacheFingerprint()!!
+                    }
+                )
+                out.putNextEntry(JarEntry(WovenManifest.ENTRY_NAME))
+                manifest.store(out)
+                out.closeEntry()
+                logger.info { "weave: Woven ${wovenClasses.size - inputManifest.classes.size} classes of $input to $output" }
+                manifest
+            }
+        }
+    }
+
+    private fun weaveClass(
+        className: String,
+        classFileBuffer: ByteArray,
+        loader: ClassLoader
+    ): Pair<ByteArray, Set<String>>? = try {
+        val reader = OpenedClassReader.of(classFileBuffer)
+        dispatcher.permitted(reader.className, reader.superName, arrayOf<String?>(*reader.interfaces))
+            .takeIf(List<*>::isNotEmpty)
+            ?.let { permitted ->
+                permitted.fold(classFileBuffer) { bytes, transformer ->
+                    transformer.transform(reader.className, bytes, loader, null) ?: bytes
+                } to permitted.map { it::class.java.name }.toSet()
+            }
+    } catch (e: Exception) {
+        logger.error(e) { "weaveClass: Error while weaving class $className, copying as is" }
+        null
+    }
+
+    companion object {
+        /**
+         * Arguments: input jar, output jar, comma separated class names of transformer objects,
+         * and optional classpath used to resolve classes referenced by woven classes.
+         */
+        @JvmStatic
+        fun main(args: Array<String>) {
+            require(args.size >= 3) { "Usage: StaticWeaver <input jar> <output jar> <transformer objects> [classpath]" }
+            val transformers = args[2].split(",").filter(String::isNotBlank).map {
+                Class.forName(it.trim()).getField("INSTANCE").get(null) as TransformerObject
+            }
+            val classpath = args.getOrNull(3)?.split(File.pathSeparator)?.filter(String::isNotBlank)?.map(::File)
+            StaticWeaver(transformers).weave(File(args[0]), File(args[1]), classpath ?: emptyList())
+        }
+    }
+
+}
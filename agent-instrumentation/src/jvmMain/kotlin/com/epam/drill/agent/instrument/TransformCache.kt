@@ -0,0 +1,92 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import mu.KotlinLogging
+import com.epam.drill.agent.common.request.HeadersRetriever
+
+private const val DIGEST_ALGORITHM = "SHA-256"
+private const val DIGEST_SIZE = 32
+
+/**
+ * Persistent cache of transformed class bytes.
+ *
+ * Entries are keyed by the hash of input class bytes, transformer id and parameters fingerprint,
+ * and stored in a subdirectory of [directory] specific for the [agentVersion].
+ * Each entry is prefixed by the digest of transformed bytes, which is verified on read.
+ */
+class TransformCache(directory: File, agentVersion: String) {
+
+    private val logger = KotlinLogging.logger {}
+    private val versionDirectory = File(directory, digest(agentVersion.encodeToByteArray()).toHex().take(16))
+
+    /**
+     * Returns transformed bytes stored by [key], `null` if the entry is missing or corrupted.
+     */
+    operator fun get(key: String): ByteArray? = read(File(versionDirectory, key))
+
+    /**
+     * Stores transformed bytes by [key], only successful transformation results should be stored.
+     */
+    operator fun set(key: String, bytes: ByteArray) = write(File(versionDirectory, key), bytes)
+
+    fun key(classFileBuffer: ByteArray, transformerId: String, fingerprint: String) =
+        MessageDigest.getInstance(DIGEST_ALGORITHM).run {
+            update(classFileBuffer)
+            update(transformerId.encodeToByteArray())
+            update(0.toByte())
+            update(fingerprint.encodeToByteArray())
+            digest().toHex()
+        }
+
+    private fun read(entry: File): ByteArray? = try {
+        entry.takeIf(File::isFile)?.readBytes()?.let { content ->
+            val bytes = content.copyOfRange(DIGEST_SIZE.coerceAtMost(content.size), content.size)
+            if (content.size > DIGEST_SIZE && MessageDigest.isEqual(content.copyOf(DIGEST_SIZE), digest(bytes))) {
+                bytes
+            } else {
+                logger.warn { "read: Corrupted transform cache entry removed: $entry" }
+                entry.delete()
+                null
+            }
+        }
+    } catch (e: Exception) {
+        logger.warn(e) { "read: Error while reading transform cache entry: $entry" }
+        null
+    }
+
+    private fun write(entry: File, bytes: ByteArray) = try {
+        versionDirectory.mkdirs()
+        val temp = File.createTempFile(entry.name, ".tmp", versionDirectory)
+        temp.writeBytes(digest(bytes) + bytes)
+        Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        Unit
+    } catch (e: Exception) {
+        logger.warn(e) { "write: Error while writing transform cache entry: $entry" }
+    }
+
+    private fun digest(bytes: ByteArray) = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(bytes)
+
+    private fun ByteArray.toHex() = joinToString("") { "%02x".format(it) }
+
+}
+
+internal fun HeadersRetriever.cacheFingerprint() =
+    listOf(adminAddressHeader(), adminAddressValue(), agentIdHeader(), agentIdHeaderValue(), sessionHeader()).joinToString(";")
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.util.BitSet
+import mu.KotlinLogging
+
+/**
+ * Dispatcher of classes to transformer objects.
+ *
+ * Transformer objects providing [TransformerObject.permitIndex] are indexed by class names,
+ * superclass names and interface names, other transformer objects are checked for every class.
+ * For a class which isn't wanted by any indexed transformer object only hash lookups are performed.
+ * Permit checks are recorded to [TransformerStatisticsStorage].
+ */
+class TransformerDispatcher(transformers: Collection<TransformerObject>) {
+
+    private val logger = KotlinLogging.logger {}
+    private val transformers = transformers.toTypedArray()
+    private val statistics = this.transformers.map(TransformerStatisticsStorage::get).toTypedArray()
+    private val byClassName = index(PermitIndex::classNames)
+    private val bySuperName = index(PermitIndex::superNames)
+    private val byInterface = index(PermitIndex::interfaces)
+    private val fallback = this.transformers.indices.filter { this.transformers[it].permitIndex() == null }
+        .toIntArray()
+        .takeIf(IntArray::isNotEmpty)
+
+    private val fingerprints = this.transformers.associate {
+        it::class.java.name to (it as? AbstractBytecodeTransformerObject)?.cacheFingerprint()
+    }
+
+    /**
+     * Returns permitted transformer objects skipping those already applied to the class ahead of time by [StaticWeaver].
+     *
+     * If any transformer object was applied with different parameters (or isn't dispatched anymore),
+     * the class is instrumented again: the returned list starts with a transformer object restoring the original class bytes.
+     */
+    fun permitted(
+        className: String,
+        superName: String?,
+        interfaces: Array<String?>,
+        protectionDomain: Any?
+    ): List<TransformerObject> {
+        val manifest = WovenClasses[protectionDomain]
+        val applied = manifest.classes[className] ?: return permitted(className, superName, interfaces)
+        val permitted = permitted(className, superName, interfaces)
+        if (applied.all { fingerprints[it] != null && fingerprints[it] == manifest.fingerprints[it] }) {
+            return permitted.filterNot { it::class.java.name in applied }
+        }
+        val original = checkNotNull(manifest.original(className)) {
+            "Class $className was woven with different parameters and its original bytes aren't available, the jar should be woven again"
+        }
+        logger.warn { "permitted: Class $className was woven with different parameters, instrumenting original bytes" }
+        return listOf(WovenClassRestorer(original)) + permitted
+    }
+
+    fun permitted(className: String, superName: String?, interfaces: Array<String?>): List<TransformerObject> {
+        var candidates = collect(null, byClassName[className])
+        if (superName != null) candidates = collect(candidates, bySuperName[superName])
+        for (interfaceName in interfaces) {
+            if (interfaceName != null) candidates = collect(candidates, byInterface[interfaceName])
+        }
+        candidates = collect(candidates, fallback) ?: return emptyList()
+        val permitted = ArrayList<TransformerObject>(candidates.cardinality())
+        var index = candidates.nextSetBit(0)
+        while (index >= 0) {
+            val start = System.nanoTime()
+            val transformer = transformers[index]
+            if (transformer.permit(className, superName, interfaces)) permitted.add(transformer)
+            statistics[index].recordPermit(start)
+            index = candidates.nextSetBit(index + 1)
+        }
+        return permitted
+    }
+
+    private fun index(names: (PermitIndex) -> Set<String>): Map<String, IntArray> = transformers.indices
+        .flatMap { index -> transformers[index].permitIndex()?.let(names)?.map { it to index } ?: emptyList() }
+        .groupBy({ it.first }, { it.second })
+        .mapValues { it.value.toIntArray() }
+
+    private fun collect(candidates: BitSet?, indexes: IntArray?): BitSet? {
+        if (indexes == null) return candidates
+        val collected = candidates ?: BitSet(transformers.size)
+        for (index in indexes) collected.set(index)
+        return collected
+    }
+
+    private class WovenClassRestorer(private val original: ByteArray) : TransformerObject {
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) = true
+        override fun transform(className: String, classFileBuffer: ByteArray, loader: Any?, protectionDomain: Any?) = original
+    }
+
+}
@@ -17,4 +17,5 @@ package com.epam.drill.agent.instrument
 
 interface TransformerObject: Transformer {
     fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean
+    fun permitIndex(): PermitIndex? = null
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import javax.management.ObjectName
+import mu.KotlinLogging
+
+interface TransformerStatisticsMBean {
+    val permitChecks: Long
+    val permitTimeMillis: Long
+    val transforms: Long
+    val transformTimeMillis: Long
+    val failures: Long
+    val bytesAdded: Long
+}
+
+/**
+ * Instrumentation counters of a single transformer object.
+ *
+ * Counters are preallocated, so recording doesn't allocate and can be kept enabled in production.
+ */
+class TransformerStatistics(val transformerName: String) : TransformerStatisticsMBean {
+
+    private val permitChecksCounter = AtomicLong()
+    private val permitNanosCounter = AtomicLong()
+    private val transformsCounter = AtomicLong()
+    private val transformNanosCounter = AtomicLong()
+    private val failuresCounter = AtomicLong()
+    private val bytesAddedCounter = AtomicLong()
+
+    override val permitChecks get() = permitChecksCounter.get()
+    override val permitTimeMillis get() = TimeUnit.NANOSECONDS.toMillis(permitNanosCounter.get())
+    override val transforms get() = transformsCounter.get()
+    override val transformTimeMillis get() = TimeUnit.NANOSECONDS.toMillis(transformNanosCounter.get())
+    override val failures get() = failuresCounter.get()
+    override val bytesAdded get() = bytesAddedCounter.get()
+
+    fun recordPermit(startNanos: Long) {
+        permitChecksCounter.incrementAndGet()
+        permitNanosCounter.addAndGet(System.nanoTime() - startNanos)
+    }
+
+    fun recordTransform(startNanos: Long, bytesAdded: Int) {
+        transformsCounter.incrementAndGet()
+        transformNanosCounter.addAndGet(System.nanoTime() - startNanos)
+        bytesAddedCounter.addAndGet(bytesAdded.toLong())
+    }
+
+    fun recordFailure() {
+        failuresCounter.incrementAndGet()
+    }
+
+    override fun toString() = "$transformerName: permitChecks=$permitChecks, permitTime=${permitTimeMillis}ms, " +
+            "transforms=$transforms, transformTime=${transformTimeMillis}ms, failures=$failures, bytesAdded=$bytesAdded"
+
+}
+
+/**
+ * Storage of [TransformerStatistics] by transformer object class name and of [ProxyClassCache] instances.
+ *
+ * Statistics are exposed over JMX and logged once by [startupCompleted], which is expected
+ * to be called by the agent after its startup. Platform MBean server isn't touched before that call
+ * to avoid initializing JMX during agent premain.
+ */
+object TransformerStatisticsStorage {
+
+    private const val OBJECT_NAME_DOMAIN = "com.epam.drill.agent.instrument"
+
+    private val logger = KotlinLogging.logger {}
+    private val statistics = ConcurrentHashMap<String, TransformerStatistics>()
+    private val proxyClassCaches = CopyOnWriteArrayList<ProxyClassCache>()
+    private val started = AtomicBoolean(false)
+
+    operator fun get(transformer: TransformerObject): TransformerStatistics = transformer::class.java.name.let { name ->
+        statistics.getOrPut(name) {
+            TransformerStatistics(name).also { if (started.get()) register(it, "TransformerStatistics", name) }
+        }
+    }
+
+    fun addProxyClassCache(cache: ProxyClassCache) {
+        proxyClassCaches.add(cache)
+        if (started.get()) register(cache, "ProxyClassCache", cache.name)
+    }
+
+    fun all(): List<TransformerStatistics> = statistics.values.sortedBy(TransformerStatistics::transformerName)
+
+    fun startupCompleted() {
+        if (!started.compareAndSet(false, true)) return
+        val all = all()
+        all.forEach { register(it, "TransformerStatistics", it.transformerName) }
+        proxyClassCaches.forEach { register(it, "ProxyClassCache", it.name) }
+        logger.info {
+            "startupCompleted: Instrumentation statistics:" + all
+                .sortedByDescending { it.permitTimeMillis + it.transformTimeMillis }
+                .plus(proxyClassCaches)
+                .joinToString(separator = "") { "\n\t$it" }
+        }
+    }
+
+    private fun register(mbean: Any, type: String, name: String) = try {
+        val objectName = ObjectName("$OBJECT_NAME_DOMAIN:type=$type,name=${ObjectName.quote(name)}")
+        ManagementFactory.getPlatformMBeanServer().takeUnless { it.isRegistered(objectName) }
+            ?.registerMBean(mbean, objectName)
+        Unit
+    } catch (e: Exception) {
+        logger.warn(e) { "register: Can't register MBean for $name" }
+    }
+
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Concurrent map with weakly referenced keys compared by identity.
+ *
+ * Lookups don't take locks, entries of collected keys are expunged when new entries are added.
+ */
+class WeakIdentityMap<K : Any, V : Any> {
+
+    private val entries = ConcurrentHashMap<IdentityKey, V>()
+    private val collected = ReferenceQueue<Any>()
+
+    operator fun get(key: K): V? = entries[IdentityKey(key, null)]
+
+    fun getOrPut(key: K, defaultValue: () -> V): V = get(key) ?: run {
+        while (true) entries.remove(collected.poll() as IdentityKey? ?: break)
+        entries.computeIfAbsent(IdentityKey(key, collected)) { defaultValue() }
+    }
+
+    private class IdentityKey(key: Any, queue: ReferenceQueue<Any>?) : WeakReference<Any>(key, queue) {
+        private val hash = System.identityHashCode(key)
+        override fun hashCode() = hash
+        override fun equals(other: Any?) = other === this || other is IdentityKey && get().let { it != null && it === other.get() }
+    }
+
+}
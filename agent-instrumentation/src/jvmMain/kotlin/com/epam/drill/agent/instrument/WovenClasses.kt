@@ -0,0 +1,124 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.io.File
+import java.io.InputStream
+import java.io.OutputStream
+import java.security.ProtectionDomain
+import java.util.Collections
+import java.util.Properties
+import java.util.WeakHashMap
+import java.util.jar.JarFile
+import mu.KotlinLogging
+
+/**
+ * Manifest of classes woven ahead of time by [StaticWeaver].
+ *
+ * Contains names of transformer objects applied to each woven class
+ * and fingerprints of transformer object parameters used for weaving.
+ * Original bytes of woven classes are stored next to the manifest under [ORIGINAL_PREFIX],
+ * so classes woven with outdated parameters can be instrumented again from the original bytes.
+ */
+class WovenManifest(
+    val classes: Map<String, Set<String>> = emptyMap(),
+    val fingerprints: Map<String, String> = emptyMap(),
+    private val location: File? = null
+) {
+
+    fun isWoven(className: String) = classes.containsKey(className)
+
+    fun isWoven(className: String, transformerName: String) = classes[className]?.contains(transformerName) ?: false
+
+    /**
+     * Returns original bytes of the woven class, `null` if they aren't stored at the manifest location.
+     */
+    fun original(className: String): ByteArray? = location?.let { location ->
+        val entryName = "$ORIGINAL_PREFIX$className.class"
+        when {
+            location.isDirectory -> File(location, entryName).takeIf(File::isFile)?.readBytes()
+            location.isFile -> JarFile(location).use { jar ->
+                jar.getJarEntry(entryName)?.let(jar::getInputStream)?.use { it.readBytes() }
+            }
+            else -> null
+        }
+    }
+
+    fun store(output: OutputStream) = Properties().apply {
+        classes.forEach { (className, transformers) -> setProperty(CLASS_PREFIX + className, transformers.joinToString(",")) }
+        fingerprints.forEach { (transformer, fingerprint) -> setProperty(TRANSFORMER_PREFIX + transformer, fingerprint) }
+    }.store(output, "Classes woven by Drill4J agent instrumentation")
+
+    companion object {
+        const val ENTRY_NAME = "META-INF/drill/woven-classes.properties"
+        const val ORIGINAL_PREFIX = "META-INF/drill/original/"
+        private const val CLASS_PREFIX = "class."
+        private const val TRANSFORMER_PREFIX = "transformer."
+
+        val EMPTY = WovenManifest()
+
+        fun load(input: InputStream, location: File? = null) = Properties().apply { load(input) }.let { properties ->
+            WovenManifest(
+                properties.stringPropertyNames()
+                    .filter { it.startsWith(CLASS_PREFIX) }
+                    .associate { it.removePrefix(CLASS_PREFIX) to properties.getProperty(it).split(",").toSet() },
+                properties.stringPropertyNames()
+                    .filter { it.startsWith(TRANSFORMER_PREFIX) }
+                    .associate { it.removePrefix(TRANSFORMER_PREFIX) to properties.getProperty(it) },
+                location
+            )
+        }
+    }
+
+}
+
+/**
+ * Storage of [WovenManifest] by protection domain of loaded classes.
+ *
+ * Manifests are read once per code source location (jar file or classes directory),
+ * classes loaded from other locations (e.g. nested jars) are never considered as woven.
+ */
+object WovenClasses {
+
+    private val logger = KotlinLogging.logger {}
+    private val manifests = Collections.synchronizedMap(WeakHashMap<ProtectionDomain, WovenManifest>())
+
+    operator fun get(protectionDomain: Any?): WovenManifest = (protectionDomain as? ProtectionDomain)?.let {
+        manifests.getOrPut(it) { load(it) }
+    } ?: WovenManifest.EMPTY
+
+    private fun load(protectionDomain: ProtectionDomain): WovenManifest = try {
+        protectionDomain.codeSource?.location
+            ?.takeIf { it.protocol == "file" }
+            ?.let { File(it.toURI()) }
+            ?.let { location ->
+                when {
+                    location.isDirectory -> File(location, WovenManifest.ENTRY_NAME).takeIf(File::isFile)
+                        ?.inputStream()?.use { WovenManifest.load(it, location) }
+                    location.isFile -> JarFile(location).use { jar ->
+                        jar.getJarEntry(WovenManifest.ENTRY_NAME)?.let(jar::getInputStream)?.use { WovenManifest.load(it, location) }
+                    }
+                    else -> null
+                }
+            }
+            ?.also { logger.info { "load: Found ${it.classes.size} woven classes in ${protectionDomain.codeSource.location}" } }
+            ?: WovenManifest.EMPTY
+    } catch (e: Exception) {
+        logger.warn(e) { "load: Error while reading woven classes manifest: ${protectionDomain.codeSource?.location}" }
+        WovenManifest.EMPTY
+    }
+
+}
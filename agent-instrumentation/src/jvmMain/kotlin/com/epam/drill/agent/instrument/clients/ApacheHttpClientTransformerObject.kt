@@ -24,6 +24,7 @@ import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_APACHE_HTTP_CLIENT_ENABLED
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for Apache HTTP client
@@ -40,12 +41,16 @@ abstract class ApacheHttpClientTransformerObject(agentConfiguration: AgentConfig
 
     override val logger = KotlinLogging.logger {}
 
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_APACHE_HTTP_CLIENT_ENABLED]
+    override fun enabled(): Boolean = super.enabled() && featureEnabled(INSTRUMENTATION_APACHE_HTTP_CLIENT_ENABLED)
 
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         interfaces.any("org/apache/http/HttpClientConnection"::equals) ||
                 interfaces.any("org/apache/hc/core5/http/io/HttpClientConnection"::equals)
 
+    override fun permitIndex() = PermitIndex(interfaces = setOf("org/apache/http/HttpClientConnection", "org/apache/hc/core5/http/io/HttpClientConnection"))
+
+    override fun cacheFingerprint() = ""
+
     override fun transform(className: String, ctClass: CtClass) {
         if (ctClass.isInterface) return
         ctClass.getDeclaredMethod("sendRequestHeader").insertCatching(
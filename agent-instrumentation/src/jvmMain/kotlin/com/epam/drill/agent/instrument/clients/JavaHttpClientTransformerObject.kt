@@ -24,6 +24,7 @@ import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_JAVA_HTTP_CLIENT_ENABLED
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for Java HttpURLConnection client
@@ -36,11 +37,15 @@ abstract class JavaHttpClientTransformerObject(agentConfiguration: AgentConfigur
 
     override val logger = KotlinLogging.logger {}
 
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_JAVA_HTTP_CLIENT_ENABLED]
+    override fun enabled(): Boolean = super.enabled() && featureEnabled(INSTRUMENTATION_JAVA_HTTP_CLIENT_ENABLED)
 
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         "java/net/HttpURLConnection" == superName || "javax/net/ssl/HttpsURLConnection" == superName
 
+    override fun permitIndex() = PermitIndex(superNames = setOf("java/net/HttpURLConnection", "javax/net/ssl/HttpsURLConnection"))
+
+    override fun cacheFingerprint() = ""
+
     override fun transform(className: String, ctClass: CtClass) {
         ctClass.constructors.forEach {
             it.insertCatching(
@@ -25,6 +25,7 @@ import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_OK_HTTP_CLIENT_ENABLED
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for OkHttp3 client
@@ -39,12 +40,16 @@ abstract class OkHttp3ClientTransformerObject(agentConfiguration: AgentConfigura
 
     override val logger = KotlinLogging.logger {}
 
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_OK_HTTP_CLIENT_ENABLED]
+    override fun enabled(): Boolean = super.enabled() && featureEnabled(INSTRUMENTATION_OK_HTTP_CLIENT_ENABLED)
 
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         interfaces.any("okhttp3/internal/http/HttpCodec"::equals) ||
                 interfaces.any("okhttp3/internal/http/ExchangeCodec"::equals)
 
+    override fun permitIndex() = PermitIndex(interfaces = setOf("okhttp3/internal/http/HttpCodec", "okhttp3/internal/http/ExchangeCodec"))
+
+    override fun cacheFingerprint() = ""
+
     override fun transform(className: String, ctClass: CtClass) {
         ctClass.getDeclaredMethod("writeRequestHeaders").insertCatching(
             CtBehavior::insertBefore,
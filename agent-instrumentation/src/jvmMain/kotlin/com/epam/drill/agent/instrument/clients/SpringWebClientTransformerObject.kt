@@ -24,6 +24,7 @@ import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTR
 import javassist.CtBehavior
 import javassist.CtClass
 import mu.KotlinLogging
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for Spring Webflux WebClient
@@ -32,11 +33,15 @@ abstract class SpringWebClientTransformerObject(agentConfiguration: AgentConfigu
     AbstractPropagationTransformer(agentConfiguration) {
     override val logger = KotlinLogging.logger {}
 
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_SPRING_WEB_CLIENT_ENABLED]
+    override fun enabled(): Boolean = super.enabled() && featureEnabled(INSTRUMENTATION_SPRING_WEB_CLIENT_ENABLED)
 
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         interfaces.any("org/springframework/web/reactive/function/client/ClientRequest"::equals)
 
+    override fun permitIndex() = PermitIndex(interfaces = setOf("org/springframework/web/reactive/function/client/ClientRequest"))
+
+    override fun cacheFingerprint() = ""
+
     override fun transform(className: String, ctClass: CtClass) {
         if (ctClass.isInterface) return
         ctClass.getDeclaredMethod("writeTo").insertCatching(
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument.engine
+
+import net.bytebuddy.jar.asm.ClassVisitor
+import net.bytebuddy.jar.asm.ClassWriter
+import net.bytebuddy.jar.asm.Label
+import net.bytebuddy.jar.asm.MethodVisitor
+import net.bytebuddy.jar.asm.Opcodes
+import net.bytebuddy.jar.asm.Type
+import net.bytebuddy.utility.OpenedClassReader
+import com.epam.drill.agent.instrument.InstrumentationGuard
+
+/**
+ * Bytecode engine injecting method hooks by ASM visitors.
+ *
+ * Doesn't parse the class into a javassist model and doesn't compile any source code,
+ * unchanged methods are copied from the input class as is.
+ *
+ * Frames aren't recomputed, so only guarded entry hooks are wrapped by the [InstrumentationGuard] check
+ * (the frame at the method entry is known). Exit hooks must be declared with `guarded = false`
+ * and check the guard themselves, guarded exit hooks are rejected by [instrument].
+ */
+object AsmBytecodeEngine : BytecodeEngine {
+
+    override fun instrument(
+        className: String,
+        classFileBuffer: ByteArray,
+        loader: ClassLoader?,
+        hooks: List<MethodHook>
+    ): ByteArray {
+        hooks.firstOrNull { it.position == HookPosition.EXIT && it.guarded }?.let {
+            throw IllegalArgumentException("Guarded exit hooks aren't supported: ${it.hookOwner}.${it.hookMethod}")
+        }
+        val reader = OpenedClassReader.of(classFileBuffer)
+        val writer = ClassWriter(reader, ClassWriter.COMPUTE_MAXS)
+        reader.accept(HookClassVisitor(writer, hooks), 0)
+        return writer.toByteArray()
+    }
+
+    private class HookClassVisitor(
+        classVisitor: ClassVisitor,
+        private val hooks: List<MethodHook>
+    ) : ClassVisitor(OpenedClassReader.ASM_API, classVisitor) {
+        private var framesRequired = false
+
+        override fun visit(
+            version: Int,
+            access: Int,
+            name: String,
+            signature: String?,
+            superName: String?,
+            interfaces: Array<String>?
+        ) {
+            framesRequired = version and 0xFFFF >= Opcodes.V1_6
+            super.visit(version, access, name, signature, superName, interfaces)
+        }
+
+        override fun visitMethod(
+            access: Int,
+            name: String,
+            descriptor: String,
+            signature: String?,
+            exceptions: Array<String>?
+        ): MethodVisitor? {
+            val methodVisitor = super.visitMethod(access, name, descriptor, signature, exceptions)
+            val methodHooks = hooks.filter { it.methodName == name && it.methodDescriptor == descriptor }
+            return when {
+                methodVisitor == null || methodHooks.isEmpty() -> methodVisitor
+                access and (Opcodes.ACC_ABSTRACT or Opcodes.ACC_NATIVE) != 0 -> methodVisitor
+                name == "<init>" || name == "<clinit>" -> methodVisitor
+                else -> HookMethodVisitor(methodVisitor, access, descriptor, methodHooks, framesRequired)
+            }
+        }
+    }
+
+    private class HookMethodVisitor(
+        methodVisitor: MethodVisitor,
+        access: Int,
+        descriptor: String,
+        hooks: List<MethodHook>,
+        private val framesRequired: Boolean
+    ) : MethodVisitor(OpenedClassReader.ASM_API, methodVisitor) {
+
+        private val argumentTypes = Type.getArgumentTypes(descriptor)
+        private val argumentSlots = argumentTypes.runningFold(if (access and Opcodes.ACC_STATIC != 0) 0 else 1) { slot, type ->
+            slot + type.size
+        }
+        private val entryHooks = hooks.filter { it.position == HookPosition.ENTRY }
+        private val exitHooks = hooks.filter { it.position == HookPosition.EXIT }
+
+        override fun visitCode() {
+            super.visitCode()
+            entryHooks.filterNot(MethodHook::guarded).forEach(::visitHook)
+            entryHooks.filter(MethodHook::guarded).takeIf(List<*>::isNotEmpty)?.let { guardedHooks ->
+                val skip = Label()
+                super.visitFieldInsn(Opcodes.GETSTATIC, guardOwner, InstrumentationGuard::active.name, "Z")
+                super.visitJumpInsn(Opcodes.IFEQ, skip)
+                guardedHooks.forEach(::visitHook)
+                super.visitLabel(skip)
+                if (framesRequired) super.visitFrame(Opcodes.F_SAME, 0, null, 0, null)
+                super.visitInsn(Opcodes.NOP)
+            }
+        }
+
+        override fun visitInsn(opcode: Int) {
+            if (opcode in Opcodes.IRETURN..Opcodes.RETURN) exitHooks.forEach(::visitHook)
+            super.visitInsn(opcode)
+        }
+
+        private fun visitHook(hook: MethodHook) {
+            val owner = hook.hookOwner.replace('.', '/')
+            val hookArgumentTypes = hook.arguments.map { if (it == 0) objectType else argumentTypes[it - 1] }
+            super.visitFieldInsn(Opcodes.GETSTATIC, owner, "INSTANCE", "L$owner;")
+            hook.arguments.forEach { index ->
+                if (index == 0) super.visitVarInsn(Opcodes.ALOAD, 0)
+                else super.visitVarInsn(argumentTypes[index - 1].getOpcode(Opcodes.ILOAD), argumentSlots[index - 1])
+            }
+            super.visitMethodInsn(
+                Opcodes.INVOKEVIRTUAL,
+                owner,
+                hook.hookMethod,
+                Type.getMethodDescriptor(Type.VOID_TYPE, *hookArgumentTypes.toTypedArray()),
+                false
+            )
+        }
+
+    }
+
+    private val guardOwner = InstrumentationGuard::class.java.name.replace('.', '/')
+    private val objectType = Type.getType(Any::class.java)
+
+}
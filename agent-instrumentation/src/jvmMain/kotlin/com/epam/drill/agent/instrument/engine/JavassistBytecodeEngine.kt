@@ -0,0 +1,56 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument.engine
+
+import java.io.ByteArrayInputStream
+import javassist.CtMethod
+import com.epam.drill.agent.instrument.ClassPoolStorage
+import com.epam.drill.agent.instrument.InstrumentationGuard
+
+/**
+ * Bytecode engine compiling method hooks by javassist insertBefore/insertAfter.
+ */
+object JavassistBytecodeEngine : BytecodeEngine {
+
+    override fun instrument(
+        className: String,
+        classFileBuffer: ByteArray,
+        loader: ClassLoader?,
+        hooks: List<MethodHook>
+    ): ByteArray = ClassPoolStorage[loader].makeClass(ByteArrayInputStream(classFileBuffer), false).let { ctClass ->
+        try {
+            ctClass.defrost()
+            hooks.forEach { hook ->
+                ctClass.declaredMethods
+                    .filter { it.name == hook.methodName && it.signature == hook.methodDescriptor }
+                    .forEach { it.insertHook(hook) }
+            }
+            ctClass.toBytecode()
+        } finally {
+            ctClass.detach()
+        }
+    }
+
+    private fun CtMethod.insertHook(hook: MethodHook) {
+        val call = "${hook.hookOwner}.INSTANCE.${hook.hookMethod}(${hook.arguments.joinToString { "$$it" }});"
+        val code = if (hook.guarded) "if (${InstrumentationGuard::class.java.name}.${InstrumentationGuard::active.name}) { $call }" else call
+        when (hook.position) {
+            HookPosition.ENTRY -> insertBefore(code)
+            HookPosition.EXIT -> insertAfter(code)
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument.engine
+
+import com.epam.drill.agent.instrument.InstrumentationGuard
+
+/**
+ * Call of a transformer object method injected into the instrumented method.
+ *
+ * The hook method is called on the `INSTANCE` of [hookOwner] at [position],
+ * instrumented method arguments are passed by javassist-style indexes ($1, $2, ...) from [arguments],
+ * index 0 passes the instrumented object to a hook method parameter of type [Any].
+ * Hook methods should return void and shouldn't throw exceptions.
+ * [guarded] hooks are skipped while [InstrumentationGuard] isn't active, [AsmBytecodeEngine] supports only guarded entry hooks.
+ */
+data class MethodHook(
+    val methodName: String,
+    val methodDescriptor: String,
+    val position: HookPosition,
+    val hookOwner: String,
+    val hookMethod: String,
+    val arguments: List<Int> = emptyList(),
+    val guarded: Boolean = true
+)
+
+enum class HookPosition {
+    ENTRY,
+    EXIT
+}
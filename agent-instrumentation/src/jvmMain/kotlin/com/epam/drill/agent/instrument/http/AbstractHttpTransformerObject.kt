@@ -25,5 +25,5 @@ import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTR
 abstract class AbstractHttpTransformerObject(
     agentConfiguration: AgentConfiguration
 ) : HeadersProcessor, AbstractPropagationTransformer(agentConfiguration) {
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_HTTP_ENABLED]
+    override fun enabled(): Boolean = super.enabled() && featureEnabled(INSTRUMENTATION_HTTP_ENABLED)
 }
\ No newline at end of file
@@ -21,11 +21,14 @@ import com.epam.drill.agent.common.configuration.AgentParameters
 import javassist.CtBehavior
 import javassist.CtClass
 import mu.KotlinLogging
+import com.epam.drill.agent.instrument.DrillHeadersCollector
 import com.epam.drill.agent.instrument.HeadersProcessor
+import com.epam.drill.agent.instrument.cacheFingerprint
 import com.epam.drill.agent.common.request.HeadersRetriever
 import com.epam.drill.agent.instrument.AbstractPropagationTransformer
 import com.epam.drill.agent.instrument.JETTY_SERVER_HANDLER
 import com.epam.drill.agent.instrument.http.AbstractHttpTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 abstract class JettyHttpServerTransformerObject(
     protected val headersRetriever: HeadersRetriever,
@@ -37,11 +40,16 @@ abstract class JettyHttpServerTransformerObject(
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         JETTY_SERVER_HANDLER == className
 
+    override fun permitIndex() = PermitIndex(classNames = setOf(JETTY_SERVER_HANDLER))
+
+    override fun cacheFingerprint() = headersRetriever.cacheFingerprint()
+
     override fun transform(className: String, ctClass: CtClass) {
         val adminHeader = headersRetriever.adminAddressHeader()
         val adminUrl = headersRetriever.adminAddressValue()
         val agentIdHeader = headersRetriever.agentIdHeader()
         val agentIdValue = headersRetriever.agentIdHeaderValue()
+        val sessionHeader = headersRetriever.sessionHeader()
         logger.debug { "transform: Starting JettyHttpServerTransformer with admin host $adminUrl..." }
         val method = ctClass.getDeclaredMethod("handle")
         method.insertCatching(
@@ -54,17 +62,19 @@ abstract class JettyHttpServerTransformerObject(
                     jettyResponse.addHeader("$agentIdHeader", "$agentIdValue");
                 }
                 org.eclipse.jetty.server.Request jettyRequest = (org.eclipse.jetty.server.Request)$3;
-                java.util.Map/*<java.lang.String, java.lang.String>*/ allHeaders = new java.util.HashMap();
+                java.util.Map/*<java.lang.String, java.lang.String>*/ drillHeaders = null;
                 java.util.Enumeration/*<String>*/ headerNames = jettyRequest.getHeaderNames();
                 while (headerNames.hasMoreElements()) {
                     java.lang.String headerName = (java.lang.String) headerNames.nextElement();
+                    if (!${DrillHeadersCollector::class.java.name}.${DrillHeadersCollector::isCollected.name}(headerName, "$sessionHeader")) continue;
                     java.lang.String header = jettyRequest.getHeader(headerName);
-                    allHeaders.put(headerName, header);
-                    if (headerName.startsWith("${HeadersProcessor.DRILL_HEADER_PREFIX}") && jettyResponse.getHeader(headerName) == null) {
+                    drillHeaders = ${DrillHeadersCollector::class.java.name}.${DrillHeadersCollector::collect.name}(drillHeaders, headerName, header);
+                    if (header != null && headerName.startsWith("${HeadersProcessor.DRILL_HEADER_PREFIX}") && jettyResponse.getHeader(headerName) == null) {
                         jettyResponse.addHeader(headerName, header);
                     }
                 }
-                ${this::class.java.name}.INSTANCE.${this::storeHeaders.name}(allHeaders);
+                ${this::class.java.name}.INSTANCE.${this::storeRequestHeaders.name}(drillHeaders);
+                if (drillHeaders != null) drillHeaders.clear();
             }
             """.trimIndent()
         )
@@ -72,7 +82,8 @@ abstract class JettyHttpServerTransformerObject(
             { insertAfter(it, true) },
             """
             ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 }
@@ -17,8 +17,17 @@ package com.epam.drill.agent.instrument.netty
 
 const val HTTP_REQUEST = "io.netty.handler.codec.http.HttpRequest"
 const val HTTP_RESPONSE = "io.netty.handler.codec.http.HttpResponse"
+const val HTTP_SERVER_CODEC = "io.netty.handler.codec.http.HttpServerCodec"
+const val HTTP_REQUEST_DECODER = "io.netty.handler.codec.http.HttpRequestDecoder"
+const val HTTP_OBJECT_AGGREGATOR = "io.netty.handler.codec.http.HttpObjectAggregator"
+const val HTTP_CONTENT_DECODER = "io.netty.handler.codec.http.HttpContentDecoder"
+const val HTTP2_STREAM_FRAME_TO_HTTP_OBJECT_CODEC = "io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec"
+const val HTTP_TO_HTTP2_CONNECTION_HANDLER = "io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler"
+const val CHANNEL_DUPLEX_HANDLER = "io.netty.channel.ChannelDuplexHandler"
 const val WEBSOCKET_FRAME_TEXT = "io.netty.handler.codec.http.websocketx.TextWebSocketFrame"
 const val WEBSOCKET_FRAME_BINARY = "io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame"
 const val WEBSOCKET_FRAME_COMMON = "io.netty.handler.codec.http.websocketx.WebSocketFrame"
 const val DRILL_HTTP_CONTEXT_KEY = "com.epam.drill.agent.common.request.DrillRequest#DRILL_REQUEST_HTTP"
 const val DRILL_WS_CONTEXT_KEY = "com.epam.drill.agent.common.request.DrillRequest#DRILL_REQUEST_WS"
+const val DRILL_HTTP_SERVER_HANDLER = "com.epam.drill.agent.instrument.netty.DrillHttpServerHandler"
+const val DRILL_HTTP_SERVER_HANDLER_NAME = "drillHttpServerHandler"
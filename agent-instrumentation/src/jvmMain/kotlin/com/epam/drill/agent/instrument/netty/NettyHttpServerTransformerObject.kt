@@ -16,20 +16,31 @@
 package com.epam.drill.agent.instrument.netty
 
 import com.epam.drill.agent.common.configuration.AgentConfiguration
-import com.epam.drill.agent.common.configuration.AgentParameters
 import javassist.CtBehavior
 import javassist.CtClass
+import javassist.CtField
+import javassist.CtMethod
 import mu.KotlinLogging
+import net.bytebuddy.dynamic.loading.ClassInjector
+import com.epam.drill.agent.instrument.ClassPoolStorage
+import com.epam.drill.agent.instrument.DrillHeadersCollector
 import com.epam.drill.agent.instrument.HeadersProcessor
+import com.epam.drill.agent.instrument.InstrumentationGuard
+import com.epam.drill.agent.instrument.cacheFingerprint
 import com.epam.drill.agent.common.request.HeadersRetriever
 import com.epam.drill.agent.instrument.AbstractPropagationTransformer
-import com.epam.drill.agent.instrument.COMPILER_GENERATED_NAMES_PREFIX
-import com.epam.drill.agent.instrument.NETTY_CHANNEL_HANDLER_CONTEXT
-import com.epam.drill.agent.instrument.http.AbstractHttpTransformerObject
+import com.epam.drill.agent.instrument.NETTY_CHANNEL_PIPELINE
+import com.epam.drill.agent.instrument.PermitIndex
+import com.epam.drill.agent.instrument.ProxyClassCache
 
 /**
  * Transformer for simple Netty-based web servers
  *
+ * Instead of hooking each handler hop of the pipeline, a single generated Drill handler
+ * is added to the channel pipeline right after the last HTTP request decoder or aggregator (see [isHttpServerDecoder]),
+ * so headers are captured once per request and propagated once per response. The handler is moved
+ * each time a decoder is added after it, so application handlers receiving aggregated requests run with the drill context.
+ *
  * Tested with:
  *     io.netty:netty-codec-http:4.1.106.Final
  */
@@ -40,76 +51,159 @@ abstract class NettyHttpServerTransformerObject(
 
     override val logger = KotlinLogging.logger {}
 
-    override fun permit(
-        className: String,
-        superName: String?,
-        interfaces: Array<String?>
-    ): Boolean = COMPILER_GENERATED_NAMES_PREFIX !in className && className.startsWith(NETTY_CHANNEL_HANDLER_CONTEXT)
+    private val handlerClassCache by lazy { ProxyClassCache(this::class.java.name) }
+
+    private val httpServerDecoders = setOf(
+        HTTP_SERVER_CODEC,
+        HTTP_REQUEST_DECODER,
+        HTTP_OBJECT_AGGREGATOR,
+        HTTP_CONTENT_DECODER,
+        HTTP2_STREAM_FRAME_TO_HTTP_OBJECT_CODEC,
+        HTTP_TO_HTTP2_CONNECTION_HANDLER
+    )
+
+    private val httpServerDecoderTypes = object : ClassValue<Boolean>() {
+        override fun computeValue(type: Class<*>) = generateSequence(type, Class<*>::getSuperclass)
+            .any { it.name in httpServerDecoders }
+    }
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        NETTY_CHANNEL_PIPELINE == className
+
+    override fun permitIndex() = PermitIndex(classNames = setOf(NETTY_CHANNEL_PIPELINE))
+
+    override fun cacheFingerprint() = headersRetriever.cacheFingerprint()
 
     override fun transform(className: String, ctClass: CtClass) {
-        val invokeChannelReadMethod = ctClass.getMethod("fireChannelRead", "(Ljava/lang/Object;)Lio/netty/channel/ChannelHandlerContext;")
-        invokeChannelReadMethod.insertCatching(
-            CtBehavior::insertBefore,
+        ctClass.getDeclaredMethod("callHandlerAdded0").insertCatching(
+            CtBehavior::insertAfter,
             """
-            if ($1 instanceof $HTTP_REQUEST) {
-                $HTTP_REQUEST nettyRequest = ($HTTP_REQUEST) $1;
-                io.netty.handler.codec.http.HttpHeaders headers = nettyRequest.headers();
-                java.util.Iterator iterator = headers.names().iterator();
-                java.util.Map allHeaders = new java.util.HashMap();
-                while(iterator.hasNext()){
-                    java.lang.String headerName = (String) iterator.next();
-                    java.lang.String headerValue = headers.get(headerName);
-                    allHeaders.put(headerName, headerValue);
-                }
-                ${this::class.java.name}.INSTANCE.${this::storeHeaders.name}(allHeaders);
-                java.util.Map drillHeaders = ${this::class.java.name}.INSTANCE.${this::retrieveHeaders.name}();
-                if (drillHeaders != null) {
-                    io.netty.util.AttributeKey drillContextKey = io.netty.util.AttributeKey.valueOf("$DRILL_HTTP_CONTEXT_KEY");
-                    this.channel().attr(drillContextKey).set(drillHeaders);
+            if (!$1.isRemoved() && ${this::class.java.name}.INSTANCE.${this::isHttpServerDecoder.name}($1.handler())) {
+                java.util.List names = this.names();
+                int drillIndex = names.indexOf("$DRILL_HTTP_SERVER_HANDLER_NAME");
+                if (drillIndex < names.indexOf($1.name())) {
+                    if (drillIndex != -1) {
+                        this.remove("$DRILL_HTTP_SERVER_HANDLER_NAME");
+                    }
+                    io.netty.channel.ChannelHandler drillHandler = (io.netty.channel.ChannelHandler) ${this::class.java.name}.INSTANCE.${this::newServerHandler.name}($CHANNEL_DUPLEX_HANDLER.class);
+                    if (drillHandler != null) {
+                        this.addAfter($1.name(), "$DRILL_HTTP_SERVER_HANDLER_NAME", drillHandler);
+                    }
                 }
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
-        invokeChannelReadMethod.insertCatching(
-            { insertAfter(it, true) },
-            """
-            if ($1 instanceof $HTTP_REQUEST) {
+    }
+
+    /**
+     * Returns `true` if [handler] decodes, decompresses or aggregates HTTP requests, including HTTP/2 to HTTP/1 codecs.
+     * Handler types are compared by class names, so optional Netty modules aren't loaded.
+     */
+    fun isHttpServerDecoder(handler: Any): Boolean = httpServerDecoderTypes.get(handler.javaClass)
+
+    /**
+     * Creates a new Drill handler instance for the classloader of Netty [anchor] class,
+     * handler class is generated once per classloader.
+     */
+    fun newServerHandler(anchor: Class<*>): Any? = handlerClassCache.findOrInsert(anchor.classLoader, DRILL_HTTP_SERVER_HANDLER) {
+        defineServerHandler(requireNotNull(anchor.classLoader))
+    }?.getDeclaredConstructor()?.newInstance()
+
+    private fun defineServerHandler(classLoader: ClassLoader): Class<*> {
+        val pool = ClassPoolStorage[classLoader]
+        val ctClass = pool.makeClass(DRILL_HTTP_SERVER_HANDLER, pool.get(CHANNEL_DUPLEX_HANDLER))
+        try {
+            CtField.make(
+                "private static final io.netty.util.AttributeKey DRILL_CONTEXT_KEY = io.netty.util.AttributeKey.valueOf(\"$DRILL_HTTP_CONTEXT_KEY\");",
+                ctClass
+            ).also(ctClass::addField)
+            CtMethod.make(channelReadCode(), ctClass).also(ctClass::addMethod)
+            CtMethod.make(writeCode(), ctClass).also(ctClass::addMethod)
+            val bytes = ctClass.toBytecode()
+            return ClassInjector.UsingReflection(classLoader)
+                .injectRaw(mapOf(DRILL_HTTP_SERVER_HANDLER to bytes))
+                .getValue(DRILL_HTTP_SERVER_HANDLER)
+        } finally {
+            ctClass.detach()
+        }
+    }
+
+    private fun channelReadCode(): String {
+        val sessionHeader = headersRetriever.sessionHeader()
+        return """
+            public void channelRead(io.netty.channel.ChannelHandlerContext ctx, java.lang.Object msg) throws java.lang.Exception {
+                if (!(msg instanceof $HTTP_REQUEST) || !${InstrumentationGuard::class.java.name}.${InstrumentationGuard::active.name}) {
+                    ctx.fireChannelRead(msg);
+                    return;
+                }
+                try {
+                    io.netty.handler.codec.http.HttpHeaders headers = (($HTTP_REQUEST) msg).headers();
+                    java.util.Map/*<java.lang.String, java.lang.String>*/ drillHeaders = null;
+                    java.util.Iterator iterator = headers.iteratorCharSequence();
+                    while (iterator.hasNext()) {
+                        java.util.Map.Entry entry = (java.util.Map.Entry) iterator.next();
+                        java.lang.CharSequence headerName = (java.lang.CharSequence) entry.getKey();
+                        if (!${DrillHeadersCollector::class.java.name}.${DrillHeadersCollector::isCollected.name}(headerName, "$sessionHeader")) continue;
+                        java.lang.CharSequence header = (java.lang.CharSequence) entry.getValue();
+                        drillHeaders = ${DrillHeadersCollector::class.java.name}.${DrillHeadersCollector::collect.name}(drillHeaders, headerName.toString(), header == null ? null : header.toString());
+                    }
+                    ${this::class.java.name}.INSTANCE.${this::storeRequestHeaders.name}(drillHeaders);
+                    if (drillHeaders != null) {
+                        drillHeaders.clear();
+                        java.util.Map storedHeaders = ${this::class.java.name}.INSTANCE.${this::retrieveHeaders.name}();
+                        if (storedHeaders != null) {
+                            ctx.channel().attr(DRILL_CONTEXT_KEY).set(storedHeaders);
+                        }
+                    }
+                } catch (java.lang.Exception e) {
+                    ${this::class.java.name}.INSTANCE.${this::logError.name}(e, "Error in the Drill handler, method name: channelRead.");
+                }
+                try {
+                    ctx.fireChannelRead(msg);
+                } catch (java.lang.Throwable e) {
+                    ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
+                    throw e;
+                }
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
             """.trimIndent()
-        )
+    }
 
+    private fun writeCode(): String {
         val adminHeader = headersRetriever.adminAddressHeader()
         val adminUrl = headersRetriever.adminAddressValue()
         val agentIdHeader = headersRetriever.agentIdHeader()
         val agentIdValue = headersRetriever.agentIdHeaderValue()
-        ctClass.getMethod("write", "(Ljava/lang/Object;ZLio/netty/channel/ChannelPromise;)V").insertCatching(
-            CtBehavior::insertBefore,
-            """
-            if ($1 instanceof $HTTP_RESPONSE) {
-                io.netty.util.AttributeKey drillContextKey = io.netty.util.AttributeKey.valueOf("$DRILL_HTTP_CONTEXT_KEY");                                            
-                io.netty.util.Attribute drillContextAttr = this.channel().attr(drillContextKey);
-                java.util.Map drillHeaders = (java.util.Map) drillContextAttr.get();
-                drillContextAttr.compareAndSet(drillHeaders, null);
-                $HTTP_RESPONSE nettyResponse = ($HTTP_RESPONSE) $1;
-                if (!"$adminUrl".equals(nettyResponse.headers().get("$adminHeader"))) {
-                    nettyResponse.headers().add("$adminHeader", "$adminUrl");
-                    nettyResponse.headers().add("$agentIdHeader", "$agentIdValue");
-                }                
-                if (drillHeaders != null) {
-                    java.util.Iterator iterator = drillHeaders.entrySet().iterator();
-                    while (iterator.hasNext()) {
-                         java.util.Map.Entry entry = (java.util.Map.Entry) iterator.next();
-                         String headerName = (String) entry.getKey();
-                         String headerValue = (String) entry.getValue();
-                         if (!nettyResponse.headers().contains(headerName)) {
-                             nettyResponse.headers().add(headerName, headerValue);
-                         }
-                    }                    
+        return """
+            public void write(io.netty.channel.ChannelHandlerContext ctx, java.lang.Object msg, io.netty.channel.ChannelPromise promise) throws java.lang.Exception {
+                if (msg instanceof $HTTP_RESPONSE) {
+                    try {
+                        java.util.Map drillHeaders = (java.util.Map) ctx.channel().attr(DRILL_CONTEXT_KEY).getAndSet(null);
+                        if (${InstrumentationGuard::class.java.name}.${InstrumentationGuard::active.name}) {
+                            io.netty.handler.codec.http.HttpHeaders headers = (($HTTP_RESPONSE) msg).headers();
+                            if (!"$adminUrl".equals(headers.get("$adminHeader"))) {
+                                headers.add("$adminHeader", "$adminUrl");
+                                headers.add("$agentIdHeader", "$agentIdValue");
+                            }
+                            if (drillHeaders != null) {
+                                java.util.Iterator iterator = drillHeaders.entrySet().iterator();
+                                while (iterator.hasNext()) {
+                                    java.util.Map.Entry entry = (java.util.Map.Entry) iterator.next();
+                                    java.lang.String headerName = (java.lang.String) entry.getKey();
+                                    if (!headers.contains(headerName)) {
+                                        headers.add(headerName, (java.lang.String) entry.getValue());
+                                    }
+                                }
+                            }
+                        }
+                    } catch (java.lang.Exception e) {
+                        ${this::class.java.name}.INSTANCE.${this::logError.name}(e, "Error in the Drill handler, method name: write.");
+                    }
                 }
+                ctx.write(msg, promise);
             }
             """.trimIndent()
-        )
     }
 
 }
@@ -17,8 +17,9 @@ package com.epam.drill.agent.instrument.reactor
 
 import com.epam.drill.agent.common.request.DrillRequest
 import com.epam.drill.agent.common.request.RequestHolder
+import com.epam.drill.agent.common.request.withDrillRequest
 import net.bytebuddy.ByteBuddy
-import net.bytebuddy.TypeCache
+import com.epam.drill.agent.instrument.ProxyClassCache
 import net.bytebuddy.description.modifier.Visibility
 import net.bytebuddy.dynamic.DynamicType
 import net.bytebuddy.dynamic.loading.ClassLoadingStrategy
@@ -35,9 +36,9 @@ const val SUBSCRIPTION_CLASS = "org.reactivestreams.Subscription"
 const val SUBSCRIBER_CLASS = "reactor.core.CoreSubscriber"
 
 /**
- * The cache of proxy classes
+ * The cache of proxy classes, the limit is set from the agent parameters by Reactor transformer objects
  */
-val proxyClassCache = TypeCache<Class<*>>()
+val proxyClassCache = ProxyClassCache("reactor")
 
 /**
  * Constructs a proxy class and an associated instance for intercepting method calls using the specified interceptor.
@@ -47,56 +48,67 @@ val proxyClassCache = TypeCache<Class<*>>()
  * @param interceptor the Byte buddy method interceptor.
  * @param configure the Byte buddy configuration which will be applied before building proxy class.
  * @param initialize the proxy instance initialization logic.
- * @return the proxy instance.
+ * @return the proxy instance, or `null` if the proxy classes limit of the cache is reached.
  */
-@Suppress("UNCHECKED_CAST")
 inline fun <T> createProxyDelegate(
     delegate: Any,
     clazz: Class<T>,
     interceptor: Any,
     crossinline configure: DynamicType.Builder.FieldDefinition.Optional.Valuable<*>.() -> DynamicType.Builder.FieldDefinition.Optional.Valuable<*> = { this },
     crossinline initialize: (T, Class<T>) -> Unit = { _, _ -> }
+): T? = createProxyType(clazz, interceptor, configure)?.let { newProxyInstance(it, delegate, initialize) }
+
+/**
+ * Creates an instance of the proxy class.
+ * @param proxyType the proxy class created by [createProxyType].
+ * @param delegate the original instance of the class.
+ * @param initialize the proxy instance initialization logic.
+ * @return the proxy instance.
+ */
+inline fun <T> newProxyInstance(
+    proxyType: Class<T>,
+    delegate: Any,
+    initialize: (T, Class<T>) -> Unit = { _, _ -> }
 ): T {
-    val proxyType = proxyClassCache.findOrInsert(clazz.classLoader, clazz) {
-        ByteBuddy()
-            .subclass(clazz)
-            .defineField(DRILL_DELEGATE_FIELD, clazz, Visibility.PUBLIC)
-            .let(configure)
-            .method(isPublic())
-            .intercept(MethodDelegation.withDefaultConfiguration()
-                .withBinders(Pipe.Binder.install(Function::class.java))
-                .to(interceptor))
-            .make()
-            .load(clazz.classLoader, ClassLoadingStrategy.Default.INJECTION)
-            .loaded
-    } as Class<T>
     val proxy = proxyType.getConstructor().newInstance()
     proxyType.getField(DRILL_DELEGATE_FIELD).set(proxy, delegate)
     initialize(proxy, proxyType)
     return proxy
 }
 
+/**
+ * Finds a cached proxy class for the specified class or generates it.
+ * @param clazz the class that will be delegated.
+ * @param interceptor the Byte buddy method interceptor.
+ * @param configure the Byte buddy configuration which will be applied before building proxy class.
+ * @return the proxy class, or `null` if the proxy classes limit of the cache is reached.
+ */
+@Suppress("UNCHECKED_CAST")
+inline fun <T> createProxyType(
+    clazz: Class<T>,
+    interceptor: Any,
+    crossinline configure: DynamicType.Builder.FieldDefinition.Optional.Valuable<*>.() -> DynamicType.Builder.FieldDefinition.Optional.Valuable<*> = { this }
+): Class<T>? = proxyClassCache.findOrInsert(clazz.classLoader, clazz.name) {
+    ByteBuddy()
+        .subclass(clazz)
+        .defineField(DRILL_DELEGATE_FIELD, clazz, Visibility.PUBLIC)
+        .let(configure)
+        .method(isPublic())
+        .intercept(MethodDelegation.withDefaultConfiguration()
+            .withBinders(Pipe.Binder.install(Function::class.java))
+            .to(interceptor))
+        .make()
+        .load(clazz.classLoader, ClassLoadingStrategy.Default.INJECTION)
+        .loaded
+} as Class<T>?
+
 /**
  * Propagates the drill request to the given "body" lambda expression via the ThreadLocal context.
  * If the request was already propagated, the previous request will be restored after the body invocation.
+ * Module callbacks aren't invoked, they are fired once per request by the server hooks.
  * @param ctx the drill request
  * @param body the body function in which the drill request will be propagated
  * @return the result of the body function
  */
-inline fun <T> propagateDrillRequest(ctx: DrillRequest, requestHolder: RequestHolder, body: () -> T?): T? {
-    val previous = requestHolder.retrieve()
-    if (previous != ctx) {
-        requestHolder.store(ctx)
-    }
-    try {
-        return body()
-    } finally {
-        if (previous != ctx && previous != null) {
-            // If previous context is different from current one - restore previous
-            requestHolder.store(previous)
-        } else if (previous == null) {
-            // If no previous context available - just cleanup the current one
-            requestHolder.remove()
-        }
-    }
-}
\ No newline at end of file
+inline fun <T> propagateDrillRequest(ctx: DrillRequest, requestHolder: RequestHolder, body: () -> T?): T? =
+    requestHolder.withDrillRequest(ctx, body)
\ No newline at end of file
@@ -16,10 +16,13 @@
 package com.epam.drill.agent.instrument.reactor
 
 import com.epam.drill.agent.instrument.reactor.interceptors.PublisherInterceptor
+import com.epam.drill.agent.instrument.reactor.interceptors.SubscriberInterceptor
 import com.epam.drill.agent.common.request.DrillRequest
 import com.epam.drill.agent.common.request.RequestHolder
 import mu.KotlinLogging
 import net.bytebuddy.description.modifier.Visibility
+import java.util.Collections
+import java.util.WeakHashMap
 
 private val logger = KotlinLogging.logger {}
 
@@ -27,6 +30,9 @@ private val logger = KotlinLogging.logger {}
  * The object responsible for creating proxy delegates instances of publisher classes.
  */
 object PublisherAssembler {
+
+    private val assemblingLoaders = Collections.synchronizedMap(WeakHashMap<ClassLoader?, Boolean>())
+
     /**
      * Creates proxy delegate for the given publisher class.
      * @param target the delegate instance.
@@ -41,15 +47,36 @@ object PublisherAssembler {
     ): Any {
         val drillRequest = requestHolder.retrieve()
         logger.trace { "${publisherClass.simpleName}.onAssembly(${target.javaClass.simpleName}):${target.hashCode()}, sessionId = ${drillRequest?.drillSessionId}, threadId = ${Thread.currentThread().id}" }
-        return createProxyDelegate(
-            target,
-            publisherClass,
-            PublisherInterceptor(requestHolder),
-            configure = { defineField(DRILL_REQUEST_FIELD, DrillRequest::class.java, Visibility.PUBLIC) },
-            initialize = { proxy, proxyType ->
-                if (drillRequest != null)
-                    proxyType.getField(DRILL_REQUEST_FIELD).set(proxy, drillRequest)
-            }
-        )
+        if (assemblingLoaders.put(publisherClass.classLoader, true) == null) pregenerateProxies(publisherClass.classLoader, requestHolder)
+        val proxyType = createPublisherProxyType(publisherClass, PublisherInterceptor(requestHolder)) ?: return target
+        return newProxyInstance(proxyType, target) { proxy, type ->
+            if (drillRequest != null)
+                type.getField(DRILL_REQUEST_FIELD).set(proxy, drillRequest)
+        }
+    }
+
+    /**
+     * Generates subscriber and subscription proxy classes on the first assembly of the given classloader,
+     * so the first subscriptions don't pay the generation cost.
+     * Publisher proxy classes aren't generated ahead, as generation initializes the publisher class,
+     * which may be still initialized by another thread.
+     * @param classLoader the classloader of Reactor classes.
+     */
+    private fun pregenerateProxies(
+        classLoader: ClassLoader?,
+        requestHolder: RequestHolder
+    ) {
+        try {
+            PublisherInterceptor(requestHolder).createSubscriberProxyType(Class.forName(SUBSCRIBER_CLASS, false, classLoader))
+            SubscriberInterceptor(requestHolder).createSubscriptionProxyType(Class.forName(SUBSCRIPTION_CLASS, false, classLoader))
+            logger.debug { "pregenerateProxies: Proxy classes are generated: $proxyClassCache" }
+        } catch (e: Throwable) {
+            logger.warn(e) { "pregenerateProxies: Error while generating proxy classes" }
+        }
     }
+
+    private fun createPublisherProxyType(publisherClass: Class<*>, interceptor: PublisherInterceptor) =
+        createProxyType(publisherClass, interceptor) {
+            defineField(DRILL_REQUEST_FIELD, DrillRequest::class.java, Visibility.PUBLIC)
+        }
 }
\ No newline at end of file
@@ -83,19 +83,11 @@ class PublisherInterceptor(
             context.put(DRILL_CONTEXT_KEY, parentDrillRequest)
         } else context
 
-        val subscriberProxy = createProxyDelegate(
-            subscriber,
-            subscriberClass,
-            subscriberInterceptor,
-            configure = {
-                defineField(DRILL_REQUEST_FIELD, DrillRequest::class.java, Visibility.PUBLIC)
-                    .defineField(DRILL_CONTEXT_FIELD, Object::class.java, Visibility.PUBLIC)
-            },
-            initialize = { proxy, proxyType ->
-                proxyType.getField(DRILL_REQUEST_FIELD).set(proxy, parentDrillRequest)
-                proxyType.getField(DRILL_CONTEXT_FIELD).set(proxy, newContext)
-            }
-        )
+        val subscriberProxyType = createSubscriberProxyType(subscriberClass) ?: return pipe.apply(target)
+        val subscriberProxy = newProxyInstance(subscriberProxyType, subscriber) { proxy, proxyType ->
+            proxyType.getField(DRILL_REQUEST_FIELD).set(proxy, parentDrillRequest)
+            proxyType.getField(DRILL_CONTEXT_FIELD).set(proxy, newContext)
+        }
         return propagateDrillRequest(parentDrillRequest, requestHolder) {
             logger.trace { "${target.javaClass.simpleName}.${superMethod.name}():${target.hashCode()}, sessionId = ${parentDrillRequest.drillSessionId}, threadId = ${Thread.currentThread().id}" }
             superMethod.invoke(target, subscriberProxy)
@@ -138,4 +130,14 @@ class PublisherInterceptor(
         putMethod.isAccessible = true
         return putMethod.invoke(this, key, value)
     }
+
+    /**
+     * Finds or generates the proxy class for the {@link reactor.core.CoreSubscriber} class.
+     * @param subscriberClass the {@link reactor.core.CoreSubscriber} class.
+     * @return the proxy class, or `null` if the proxy classes limit is reached.
+     */
+    fun createSubscriberProxyType(subscriberClass: Class<*>) = createProxyType(subscriberClass, subscriberInterceptor) {
+        defineField(DRILL_REQUEST_FIELD, DrillRequest::class.java, Visibility.PUBLIC)
+            .defineField(DRILL_CONTEXT_FIELD, Object::class.java, Visibility.PUBLIC)
+    }
 }
\ No newline at end of file
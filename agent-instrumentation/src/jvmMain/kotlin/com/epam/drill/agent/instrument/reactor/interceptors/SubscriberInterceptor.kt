@@ -72,13 +72,12 @@ class SubscriberInterceptor(
     ): Any? {
         if (subscription == null)
             return pipe.apply(target)
-        val subscriptionProxy = createProxyDelegate(
-            subscription,
-            Class.forName(SUBSCRIPTION_CLASS, true, target.javaClass.classLoader),
-            subscriptionInterceptor,
-            configure = { defineField(DRILL_REQUEST_FIELD, DrillRequest::class.java, Visibility.PUBLIC) },
-            initialize = { proxy, proxyType -> proxyType.getField(DRILL_REQUEST_FIELD).set(proxy, drillRequest) }
-        )
+        val subscriptionProxyType = createSubscriptionProxyType(
+            Class.forName(SUBSCRIPTION_CLASS, true, target.javaClass.classLoader)
+        ) ?: return pipe.apply(target)
+        val subscriptionProxy = newProxyInstance(subscriptionProxyType, subscription) { proxy, proxyType ->
+            proxyType.getField(DRILL_REQUEST_FIELD).set(proxy, drillRequest)
+        }
 
         return propagateDrillRequest(drillRequest, requestHolder) {
             logger.trace { "${target.javaClass.simpleName}.onSubscribe(${subscription.javaClass.name}):${target.hashCode()}, sessionId = ${drillRequest.drillSessionId}, threadId = ${Thread.currentThread().id}" }
@@ -102,4 +101,13 @@ class SubscriberInterceptor(
             pipe.apply(target)
         }
     }
+
+    /**
+     * Finds or generates the proxy class for the {@link org.reactivestreams.Subscription} class.
+     * @param subscriptionClass the {@link org.reactivestreams.Subscription} class.
+     * @return the proxy class, or `null` if the proxy classes limit is reached.
+     */
+    fun createSubscriptionProxyType(subscriptionClass: Class<*>) = createProxyType(subscriptionClass, subscriptionInterceptor) {
+        defineField(DRILL_REQUEST_FIELD, DrillRequest::class.java, Visibility.PUBLIC)
+    }
 }
\ No newline at end of file
@@ -21,11 +21,17 @@ import com.epam.drill.agent.common.request.RequestHolder
 import com.epam.drill.agent.instrument.AbstractPropagationTransformer
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_REACTOR_ENABLED
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_REACTOR_PROXY_CLASSES_LIMIT
+import com.epam.drill.agent.instrument.reactor.proxyClassCache
 
 abstract class AbstractReactorTransformerObject(agentConfiguration: AgentConfiguration) :
     RequestHolder,
     AbstractPropagationTransformer(agentConfiguration) {
 
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_REACTOR_ENABLED]
+    init {
+        proxyClassCache.maxSize = agentConfiguration.parameters[INSTRUMENTATION_REACTOR_PROXY_CLASSES_LIMIT]
+    }
+
+    override fun enabled(): Boolean = super.enabled() && featureEnabled(INSTRUMENTATION_REACTOR_ENABLED)
 
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import com.epam.drill.agent.common.request.RequestHolder
 import javassist.CtBehavior
 import javassist.CtClass
 import mu.KotlinLogging
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for {@link reactor.core.publisher.Flux}.
@@ -34,6 +35,8 @@ abstract class FluxTransformerObject(agentConfiguration: AgentConfiguration) :
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         className == "reactor/core/publisher/Flux"
 
+    override fun permitIndex() = PermitIndex(classNames = setOf("reactor/core/publisher/Flux"))
+
     override fun transform(className: String, ctClass: CtClass) {
         ctClass.getMethod("onAssembly", "(Lreactor/core/publisher/Flux;)Lreactor/core/publisher/Flux;").insertCatching(
             CtBehavior::insertBefore,
@@ -24,6 +24,7 @@ import com.epam.drill.agent.common.request.RequestHolder
 import javassist.CtBehavior
 import javassist.CtClass
 import mu.KotlinLogging
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for {@link reactor.core.publisher.Mono}.
@@ -36,6 +37,8 @@ abstract class MonoTransformerObject(agentConfiguration: AgentConfiguration) :
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         className == "reactor/core/publisher/Mono"
 
+    override fun permitIndex() = PermitIndex(classNames = setOf("reactor/core/publisher/Mono"))
+
     override fun transform(className: String, ctClass: CtClass) {
         ctClass.getMethod("onAssembly", "(Lreactor/core/publisher/Mono;)Lreactor/core/publisher/Mono;").insertCatching(
             CtBehavior::insertBefore,
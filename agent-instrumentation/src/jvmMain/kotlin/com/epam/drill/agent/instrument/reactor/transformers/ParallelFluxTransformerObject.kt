@@ -24,6 +24,7 @@ import com.epam.drill.agent.common.request.RequestHolder
 import javassist.CtBehavior
 import javassist.CtClass
 import mu.KotlinLogging
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for {@link reactor.core.publisher.ParallelFlux}.
@@ -36,6 +37,8 @@ abstract class ParallelFluxTransformerObject(agentConfiguration: AgentConfigurat
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         className == "reactor/core/publisher/ParallelFlux"
 
+    override fun permitIndex() = PermitIndex(classNames = setOf("reactor/core/publisher/ParallelFlux"))
+
     override fun transform(className: String, ctClass: CtClass) {
         ctClass.getMethod("onAssembly", "(Lreactor/core/publisher/ParallelFlux;)Lreactor/core/publisher/ParallelFlux;")
             .insertCatching(
@@ -25,6 +25,7 @@ import com.epam.drill.agent.common.request.RequestHolder
 import javassist.CtBehavior
 import javassist.CtClass
 import mu.KotlinLogging
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for {@link reactor.core.scheduler.Schedulers}.
@@ -38,6 +39,8 @@ abstract class SchedulersTransformerObject(agentConfiguration: AgentConfiguratio
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         className == "reactor/core/scheduler/Schedulers"
 
+    override fun permitIndex() = PermitIndex(classNames = setOf("reactor/core/scheduler/Schedulers"))
+
     override fun transform(className: String, ctClass: CtClass) {
         ctClass.getDeclaredMethod("onSchedule").insertCatching(
             CtBehavior::insertBefore,
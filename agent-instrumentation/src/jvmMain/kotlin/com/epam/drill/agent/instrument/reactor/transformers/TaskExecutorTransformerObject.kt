@@ -25,18 +25,23 @@ import com.epam.drill.agent.instrument.reactor.PropagatedDrillRequestCallable
 import com.epam.drill.agent.instrument.reactor.PropagatedDrillRequestRunnable
 import com.epam.drill.agent.common.request.DrillRequest
 import com.epam.drill.agent.common.request.RequestHolder
+import com.epam.drill.agent.instrument.PermitIndex
 
 abstract class TaskExecutorTransformerObject(agentConfiguration: AgentConfiguration) :
     AbstractReactorTransformerObject(agentConfiguration) {
 
     override val logger = KotlinLogging.logger {}
 
+    private val permittedClassNames = setOf(
+        "org/springframework/core/task/SimpleAsyncTaskExecutor",
+        "org/springframework/scheduling/concurrent/ConcurrentTaskExecutor",
+        "org/springframework/scheduling/concurrent/ThreadPoolTaskExecutor"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "org/springframework/core/task/SimpleAsyncTaskExecutor",
-            "org/springframework/scheduling/concurrent/ConcurrentTaskExecutor",
-            "org/springframework/scheduling/concurrent/ThreadPoolTaskExecutor"
-        ).contains(className)
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting TaskExecutorTransformer for $className..." }
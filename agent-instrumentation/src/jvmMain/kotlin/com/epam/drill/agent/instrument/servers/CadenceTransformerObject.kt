@@ -26,6 +26,7 @@ import com.epam.drill.agent.instrument.CADENCE_CONSUMER
 import com.epam.drill.agent.instrument.CADENCE_PRODUCER
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_CADENCE_ENABLED
+import com.epam.drill.agent.instrument.PermitIndex
 
 abstract class CadenceTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor,
     AbstractPropagationTransformer(agentConfiguration) {
@@ -41,11 +42,15 @@ abstract class CadenceTransformerObject(agentConfiguration: AgentConfiguration)
 
     override val logger = KotlinLogging.logger {}
 
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_CADENCE_ENABLED]
+    override fun enabled(): Boolean = super.enabled() && featureEnabled(INSTRUMENTATION_CADENCE_ENABLED)
 
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         CADENCE_PRODUCER == className || CADENCE_CONSUMER == className
 
+    override fun permitIndex() = PermitIndex(classNames = setOf(CADENCE_PRODUCER, CADENCE_CONSUMER))
+
+    override fun cacheFingerprint() = ""
+
     override fun transform(className: String, ctClass: CtClass) {
         when (className) {
             CADENCE_PRODUCER -> instrumentProducer(ctClass)
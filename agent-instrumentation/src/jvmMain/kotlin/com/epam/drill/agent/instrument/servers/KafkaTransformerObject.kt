@@ -26,6 +26,7 @@ import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_KAFKA_ENABLED
 import com.epam.drill.agent.instrument.KAFKA_CONSUMER_SPRING
 import com.epam.drill.agent.instrument.KAFKA_PRODUCER_INTERFACE
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for Kafka producer and Spring Kafka listener
@@ -40,12 +41,16 @@ abstract class KafkaTransformerObject(agentConfiguration: AgentConfiguration) :
     override val logger = KotlinLogging.logger {}
 
     override fun enabled(): Boolean {
-        return super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_KAFKA_ENABLED]
+        return super.enabled() && featureEnabled(INSTRUMENTATION_KAFKA_ENABLED)
     }
 
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         KAFKA_CONSUMER_SPRING == className || interfaces.contains(KAFKA_PRODUCER_INTERFACE)
 
+    override fun permitIndex() = PermitIndex(classNames = setOf(KAFKA_CONSUMER_SPRING), interfaces = setOf(KAFKA_PRODUCER_INTERFACE))
+
+    override fun cacheFingerprint() = ""
+
     override fun transform(className: String, ctClass: CtClass) {
         val interfaces = ctClass.interfaces.map(CtClass::getName)
         when {
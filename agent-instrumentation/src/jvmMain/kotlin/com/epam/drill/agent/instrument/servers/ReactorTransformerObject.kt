@@ -18,6 +18,7 @@ package com.epam.drill.agent.instrument.servers
 import com.epam.drill.agent.common.configuration.AgentConfiguration
 import com.epam.drill.agent.instrument.AbstractPropagationTransformer
 import com.epam.drill.agent.instrument.AbstractTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_REACTOR_ENABLED
 import javassist.CtClass
 import mu.KotlinLogging
@@ -30,12 +31,20 @@ abstract class ReactorTransformerObject(
     override val logger = KotlinLogging.logger {}
 
     override fun enabled(): Boolean {
-        return super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_REACTOR_ENABLED]
+        return super.enabled() && featureEnabled(INSTRUMENTATION_REACTOR_ENABLED)
     }
 
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         reactorTransformers.any { it.permit(className, null, emptyArray()) }
 
+    override fun permitIndex() = reactorTransformers
+        .map(AbstractTransformerObject::permitIndex)
+        .takeIf { indexes -> indexes.all { it != null } }
+        ?.filterNotNull()
+        ?.fold(PermitIndex(), PermitIndex::plus)
+
+    override fun cacheFingerprint() = ""
+
     override fun transform(className: String, ctClass: CtClass) {
         reactorTransformers.find { it.permit(className, null, emptyArray()) }
             ?.transform(className, ctClass)
@@ -16,43 +16,66 @@
 package com.epam.drill.agent.instrument.servers
 
 import com.epam.drill.agent.common.configuration.AgentConfiguration
-import com.epam.drill.agent.common.configuration.AgentParameters
 import java.nio.ByteBuffer
-import javassist.CtBehavior
-import javassist.CtClass
 import mu.KotlinLogging
-import com.epam.drill.agent.instrument.AbstractTransformerObject
+import com.epam.drill.agent.instrument.DrillHeadersCollector
 import com.epam.drill.agent.instrument.HeadersProcessor
+import com.epam.drill.agent.instrument.InstrumentationGuard
+import com.epam.drill.agent.instrument.WeakIdentityMap
 import com.epam.drill.agent.common.request.HeadersRetriever
-import com.epam.drill.agent.instrument.AbstractPropagationTransformer
+import com.epam.drill.agent.instrument.AbstractMethodHookTransformerObject
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.CONTEXT_PROPAGATION_ENABLED
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_SSL_ENABLED
 import com.epam.drill.agent.instrument.SSL_ENGINE_CLASS_NAME
+import com.epam.drill.agent.instrument.engine.HookPosition
+import com.epam.drill.agent.instrument.engine.MethodHook
+import com.epam.drill.agent.instrument.PermitIndex
+import com.epam.drill.agent.request.PropagationPolicy
 
-private const val HTTP_DETECTOR_BYTES_COUNT = 8
 private const val HTTP_HEADERS_SEPARATOR = "\r\n"
-private const val HTTP_HEADERS_END_MARK = HTTP_HEADERS_SEPARATOR + HTTP_HEADERS_SEPARATOR
-private const val HTTP_RESPONSE_MARK = "HTTP"
+private const val HTTP_RESPONSE_MARK = "HTTP/"
+private const val HTTP_HEAD_INITIAL_SIZE = 512
+private const val HTTP_HEAD_MAX_SIZE = 64 * 1024
+private const val CR = '\r'.code.toByte()
+private const val LF = '\n'.code.toByte()
+private const val COLON = ':'.code.toByte()
 
 /**
  * Transformer for SSLEngine based web servers with java-side HTTPS termination
  *
+ * Heap and direct buffers of `ByteBuffer[]` wrap/unwrap operations are supported, single buffer operations
+ * are delegated to them by SSLEngine. HTTP request heads are scanned incrementally by [HttpHeadScanner]
+ * kept per engine, so heads split across TLS records are read as well. Response heads are scanned by thread-local
+ * scanners, so wrap operations don't look up the engine state. Headers are injected to response heads
+ * by replacing the source buffer, bytes outside of the caller's buffer limits are never written.
+ *
  * Tested with:
  *     jdk 1.8.0_241
  */
 abstract class SSLEngineTransformerObject(
     headersRetriever: HeadersRetriever,
     agentConfiguration: AgentConfiguration
-) : HeadersProcessor, AbstractPropagationTransformer(agentConfiguration) {
+) : HeadersProcessor, AbstractMethodHookTransformerObject(agentConfiguration) {
 
-    private val httpVerbs = setOf("OPTIONS", "GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "TRACE", "CONNECT", "PRI")
-    private val httpHeadersEndMark = HTTP_HEADERS_END_MARK.encodeToByteArray()
+    private val httpRequestMarks = listOf("OPTIONS", "GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "TRACE", "CONNECT", "PRI")
+        .map { "$it ".encodeToByteArray() }
+    private val httpResponseMarks = listOf(HTTP_RESPONSE_MARK.encodeToByteArray())
+    private val requestScanners = WeakIdentityMap<Any, HttpHeadScanner>()
+    private val threadStates = ThreadLocal.withInitial { ThreadState(HttpHeadScanner(httpResponseMarks)) }
 
     private val agentIdPair by lazy { headersRetriever.agentIdHeader() to headersRetriever.agentIdHeaderValue() }
     private val adminAddressPair by lazy { headersRetriever.adminAddressHeader() to headersRetriever.adminAddressValue() }
+    private val sessionHeader by lazy { headersRetriever.sessionHeader() }
 
     override val logger = KotlinLogging.logger {}
 
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_SSL_ENABLED]
+    init {
+        PropagationPolicy.configure(agentConfiguration.parameters)
+    }
+
+    override fun enabled(): Boolean = super.enabled()
+            && featureEnabled(CONTEXT_PROPAGATION_ENABLED)
+            && featureEnabled(INSTRUMENTATION_SSL_ENABLED)
 
     override fun permit(
         className: String,
@@ -60,95 +83,227 @@ abstract class SSLEngineTransformerObject(
         interfaces: Array<String?>
     ): Boolean = superName == SSL_ENGINE_CLASS_NAME
 
-    override fun transform(className: String, ctClass: CtClass) {
-        ctClass.getMethod(
+    override fun permitIndex() = PermitIndex(superNames = setOf(SSL_ENGINE_CLASS_NAME))
+
+    override fun methodHooks(className: String) = listOf(
+        MethodHook(
             "unwrap",
-            "(Ljava/nio/ByteBuffer;[Ljava/nio/ByteBuffer;II)Ljavax/net/ssl/SSLEngineResult;"
-        ).insertCatching(
-            CtBehavior::insertAfter,
-            """
-            ${this::class.java.name}.INSTANCE.${this::readHttpRequest.name}($2);
-            """.trimIndent()
-        )
-        val wrapMethod = ctClass.getMethod(
+            "(Ljava/nio/ByteBuffer;[Ljava/nio/ByteBuffer;II)Ljavax/net/ssl/SSLEngineResult;",
+            HookPosition.ENTRY,
+            this::class.java.name,
+            this::markHttpRequest.name,
+            listOf(2, 3, 4)
+        ),
+        MethodHook(
+            "unwrap",
+            "(Ljava/nio/ByteBuffer;[Ljava/nio/ByteBuffer;II)Ljavax/net/ssl/SSLEngineResult;",
+            HookPosition.EXIT,
+            this::class.java.name,
+            this::readHttpRequest.name,
+            listOf(0, 2, 3, 4),
+            guarded = false
+        ),
+        MethodHook(
             "wrap",
-            "([Ljava/nio/ByteBuffer;IILjava/nio/ByteBuffer;)Ljavax/net/ssl/SSLEngineResult;"
-        )
-        wrapMethod.insertCatching(
-            CtBehavior::insertBefore,
-            """
-            ${this::class.java.name}.INSTANCE.${this::writeHttpRequest.name}($1);
-            """.trimIndent()
-        )
-        wrapMethod.insertCatching(
-            CtBehavior::insertAfter,
-            """
-            ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
-            """.trimIndent()
+            "([Ljava/nio/ByteBuffer;IILjava/nio/ByteBuffer;)Ljavax/net/ssl/SSLEngineResult;",
+            HookPosition.ENTRY,
+            this::class.java.name,
+            this::writeHttpRequest.name,
+            listOf(1, 2, 3)
+        ),
+        MethodHook(
+            "wrap",
+            "([Ljava/nio/ByteBuffer;IILjava/nio/ByteBuffer;)Ljavax/net/ssl/SSLEngineResult;",
+            HookPosition.EXIT,
+            this::class.java.name,
+            this::finishHttpRequest.name,
+            guarded = false
         )
+    )
+
+    /**
+     * Remembers positions of destination buffers of the current thread,
+     * bytes unwrapped after them are scanned by [readHttpRequest].
+     */
+    fun markHttpRequest(buffers: Array<ByteBuffer>, offset: Int, length: Int) = try {
+        val state = threadStates.get()
+        if (state.positions.size < length) state.positions = IntArray(length)
+        for (index in 0 until length) state.positions[index] = buffers[offset + index].position()
+        state.length = length
+    } catch (e: Exception) {
+        logger.error(e) { "markHttpRequest: Error while marking request buffers" }
     }
 
-    fun readHttpRequest(buffers: Array<ByteBuffer>) = try {
-        val prefix = retrievePrefix(buffers[0])
-        val bytes by lazy { retrieveBytes(buffers[0]) }
-        val headersEnd by lazy { bytes.indexOf(httpHeadersEndMark) }
-        when {
-            httpVerbs.any(prefix::startsWith) && headersEnd != -1 -> readHeaders(bytes, headersEnd)
-            else -> Unit
+    /**
+     * Scans bytes unwrapped after positions marked by [markHttpRequest], the mark is consumed.
+     *
+     * The exit hook isn't guarded by the bytecode engine, so the guard is checked here.
+     */
+    fun readHttpRequest(engine: Any, buffers: Array<ByteBuffer>, offset: Int, length: Int) {
+        val state = threadStates.get()
+        val marked = minOf(length, state.length)
+        state.length = 0
+        if (!InstrumentationGuard.active || marked == 0) return
+        try {
+            val scanner = requestScanners.getOrPut(engine) { HttpHeadScanner(httpRequestMarks) }
+            if (scanner.skipped) scanner.reset()
+            for (index in 0 until marked) {
+                val buffer = buffers[offset + index]
+                if (scanner.scan(buffer, state.positions[index], buffer.position()) != -1) {
+                    readHeaders(scanner.head, scanner.size)
+                    scanner.skip()
+                }
+                if (scanner.skipped) break
+            }
+        } catch (e: Exception) {
+            logger.error(e) { "readHttpRequest: Error while parse request buffer" }
         }
-    } catch (e: Exception) {
-        logger.error(e) { "readHttpRequest: Error while parse request buffer" }
     }
 
-    fun writeHttpRequest(buffers: Array<ByteBuffer>) = try {
-        val prefix = retrievePrefix(buffers[0])
-        val bytes by lazy { retrieveBytes(buffers[0]) }
-        val headersEnd by lazy { bytes.indexOf(httpHeadersEndMark) }
-        when {
-            prefix.startsWith(HTTP_RESPONSE_MARK) && headersEnd != -1 -> writeHeaders(buffers, bytes, headersEnd)
-            else -> Unit
+    fun writeHttpRequest(buffers: Array<ByteBuffer>, offset: Int, length: Int) = try {
+        val scanner = threadStates.get().response
+        scanner.reset()
+        for (index in offset until offset + length) {
+            val buffer = buffers[index]
+            val headEnd = scanner.scan(buffer, buffer.position(), buffer.limit())
+            if (headEnd != -1) writeHeaders(buffers, index, headEnd - HTTP_HEADERS_SEPARATOR.length, scanner)
+            if (headEnd != -1 || scanner.skipped) break
         }
     } catch (e: Exception) {
         logger.error(e) { "writeHttpRequest: Error while writing response buffer" }
     }
 
-    private fun retrievePrefix(buffer: ByteBuffer) = Integer.min(HTTP_DETECTOR_BYTES_COUNT, buffer.limit())
-        .let { buffer.array().copyOfRange(buffer.arrayOffset(), it).decodeToString() }
+    fun finishHttpRequest() = try {
+        removeHeaders()
+    } catch (e: Exception) {
+        logger.error(e) { "finishHttpRequest: Error while removing headers" }
+    }
 
-    private fun retrieveBytes(buffer: ByteBuffer) = buffer.array()
-        .copyOfRange(buffer.arrayOffset(), buffer.arrayOffset() + buffer.limit())
+    private fun readHeaders(head: ByteArray, size: Int) {
+        logger.trace { "readHeaders: Reading HTTP request:\n${String(head, 0, size, Charsets.UTF_8).prependIndent("\t")}" }
+        var headers: MutableMap<String, String>? = null
+        var lineStart = lineEnd(head, 0, size) + HTTP_HEADERS_SEPARATOR.length // skip first line with HTTP request line
+        while (lineStart < size) {
+            val lineEnd = lineEnd(head, lineStart, size)
+            if (lineEnd == lineStart) break
+            val colon = (lineStart until lineEnd).firstOrNull { head[it] == COLON } ?: -1
+            if (colon > lineStart) {
+                val name = String(head, lineStart, colon - lineStart, Charsets.UTF_8).trim()
+                if (DrillHeadersCollector.isCollected(name, sessionHeader)) {
+                    val value = String(head, colon + 1, lineEnd - colon - 1, Charsets.UTF_8).trim()
+                    logger.trace { "readHeaders: Read HTTP header: $name=$value" }
+                    headers = DrillHeadersCollector.collect(headers, name, value)
+                }
+            }
+            lineStart = lineEnd + HTTP_HEADERS_SEPARATOR.length
+        }
+        headers?.let {
+            storeHeaders(it)
+            it.clear()
+        }
+    }
 
-    private fun readHeaders(bytes: ByteArray, index: Int) = bytes.copyOf(index).decodeToString()
-        .also { logger.trace { "readHeaders: Reading HTTP request:\n${it.prependIndent("\t")}" } }
-        .substringAfter(HTTP_HEADERS_SEPARATOR) // skip first line with HTTP response status
-        .split(HTTP_HEADERS_SEPARATOR)
-        .filter(String::isNotBlank)
-        .map { it.split(":", limit = 2).map(String::trim) }
-        .onEach { logger.trace { "readHeaders: Read HTTP header: ${it[0]}=${it[1]}" } }
-        .associate { it[0] to it[1] }
-        .let(::storeHeaders)
+    private fun lineEnd(head: ByteArray, from: Int, size: Int): Int {
+        for (index in from until size - 1) {
+            if (head[index] == CR && head[index + 1] == LF) return index
+        }
+        return size
+    }
 
-    private fun writeHeaders(buffers: Array<ByteBuffer>, bytes: ByteArray, index: Int) {
+    /**
+     * Inserts headers before the final line separator of the response head at [insertIndex] of buffers[[index]].
+     */
+    private fun writeHeaders(buffers: Array<ByteBuffer>, index: Int, insertIndex: Int, scanner: HttpHeadScanner) {
+        val buffer = buffers[index]
+        if (insertIndex < buffer.position()) return
         val headers = (retrieveHeaders() ?: emptyMap()) + mapOf(agentIdPair, adminAddressPair)
-        if (bytes.indexOf(headers.keys.first().encodeToByteArray()) != -1) return
+        val lines = headers.map { (k, v) -> "$k: $v$HTTP_HEADERS_SEPARATOR".encodeToByteArray() }
+        if (scanner.headEndsWith(lines.last(), HTTP_HEADERS_SEPARATOR.length)) return
         headers.entries.forEach { logger.trace { "writeHeaders: Writing HTTP header: ${it.key}=${it.value}" } }
-        val responseHead = bytes.copyOfRange(0, index)
-        val responseTail = bytes.copyOfRange(index, bytes.size)
-        val injectedHeaders = headers.map { (k, v) -> "$k: $v" }
-            .joinToString(HTTP_HEADERS_SEPARATOR, HTTP_HEADERS_SEPARATOR)
-            .encodeToByteArray()
-        val modified = responseHead + injectedHeaders + responseTail
-        buffers[0].position(bytes.size)
-        buffers[0] = ByteBuffer.wrap(modified)
-        logger.trace { "writeHeaders: Written HTTP headers:\n${modified.decodeToString().prependIndent("\t")}" }
+        val injected = lines.reduce(ByteArray::plus)
+        val view = buffer.duplicate()
+        val modified = ByteBuffer.allocate(buffer.remaining() + injected.size)
+        view.limit(insertIndex)
+        modified.put(view)
+        modified.put(injected)
+        view.limit(buffer.limit())
+        view.position(insertIndex)
+        modified.put(view)
+        modified.flip()
+        buffer.position(buffer.limit())
+        buffers[index] = modified
+        logger.trace { "writeHeaders: Written HTTP headers: ${injected.decodeToString()}" }
+    }
+
+    private class ThreadState(val response: HttpHeadScanner) {
+        var positions = IntArray(0)
+        var length = 0
     }
 
-    private fun ByteArray.indexOf(bytes: ByteArray): Int {
-        for (thisIndex in IntRange(0, lastIndex - bytes.lastIndex)) {
-            val regionMatches = bytes.foldIndexed(true) { index, acc, byte -> acc && this[thisIndex + index] == byte }
-            if (regionMatches) return thisIndex
+    /**
+     * Incremental scanner of HTTP message heads starting with one of [marks].
+     *
+     * Bytes are appended to [head] until the empty line ending the head, scanning is skipped
+     * for messages not starting with any of [marks] and heads larger than [HTTP_HEAD_MAX_SIZE].
+     */
+    private class HttpHeadScanner(private val marks: List<ByteArray>) {
+
+        private val marksLength = marks.maxOf(ByteArray::size)
+        private var endMatched = 0
+
+        var head = ByteArray(HTTP_HEAD_INITIAL_SIZE)
+            private set
+        var size = 0
+            private set
+        var skipped = false
+            private set
+
+        fun reset() {
+            size = 0
+            endMatched = 0
+            skipped = false
+        }
+
+        fun skip() {
+            skipped = true
+        }
+
+        /**
+         * Returns the index after the end of the head in [buffer] or -1 if the head isn't complete.
+         */
+        fun scan(buffer: ByteBuffer, from: Int, to: Int): Int {
+            if (skipped) return -1
+            for (index in from until to) {
+                if (size == head.size) {
+                    if (size >= HTTP_HEAD_MAX_SIZE) return -1.also { skip() }
+                    head = head.copyOf(size * 2)
+                }
+                val byte = buffer.get(index)
+                head[size++] = byte
+                if (size <= marksLength && !matchesMark()) return -1.also { skip() }
+                endMatched = when {
+                    byte == CR -> if (endMatched == 2) 3 else 1
+                    byte == LF && (endMatched == 1 || endMatched == 3) -> endMatched + 1
+                    else -> 0
+                }
+                if (endMatched == 4) return index + 1
+            }
+            return -1
+        }
+
+        fun headEndsWith(bytes: ByteArray, skipLast: Int): Boolean {
+            val start = size - skipLast - bytes.size
+            if (start < 0) return false
+            for (index in bytes.indices) {
+                if (head[start + index] != bytes[index]) return false
+            }
+            return true
+        }
+
+        private fun matchesMark() = marks.any { mark ->
+            (0 until minOf(size, mark.size)).all { head[it] == mark[it] }
         }
-        return -1
+
     }
 
 }
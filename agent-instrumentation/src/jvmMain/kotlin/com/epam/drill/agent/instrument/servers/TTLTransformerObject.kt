@@ -28,6 +28,7 @@ import com.epam.drill.agent.ttl.threadpool.agent.internal.transformlet.impl.TtlT
 import javassist.CtClass
 import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_TTL_ENABLED
 
 abstract class TTLTransformerObject(agentConfiguration: AgentConfiguration) : AbstractPropagationTransformer(agentConfiguration) {
@@ -54,7 +55,7 @@ abstract class TTLTransformerObject(agentConfiguration: AgentConfiguration) : Ab
         if (TtlAgent.isEnableTimerTask()) transformletList.add(TtlTimerTaskTransformlet())
     }
 
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_TTL_ENABLED]
+    override fun enabled(): Boolean = super.enabled() && featureEnabled(INSTRUMENTATION_TTL_ENABLED)
 
     override fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean {
         if (directTtlClasses.contains(className)) return true
@@ -62,6 +63,12 @@ abstract class TTLTransformerObject(agentConfiguration: AgentConfiguration) : Ab
                 && className != timerTaskClass && !className.startsWith(jdkInternal)
     }
 
+    override fun permitIndex() = PermitIndex(
+        classNames = directTtlClasses.toSet(),
+        superNames = setOf(threadPoolExecutorClass),
+        interfaces = setOf(runnableInterface)
+    )
+
     override fun transform(
         className: String,
         classFileBuffer: ByteArray,
@@ -23,6 +23,7 @@ import com.epam.drill.agent.common.request.RequestHolder
 import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_COMPATIBILITY_TESTS_ENABLED
 import javassist.CtClass
 import mu.KotlinLogging
+import com.epam.drill.agent.instrument.PermitIndex
 
 private const val COMPATIBILITY_TEST_CLASS_NAME = "com/epam/drill/compatibility/context/DrillTestContext"
 private const val DRILL_SESSION_ID_HEADER = "drill-session-id"
@@ -36,11 +37,13 @@ abstract class CompatibilityTestsTransformerObject(agentConfiguration: AgentConf
 
     override val logger = KotlinLogging.logger {}
 
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_COMPATIBILITY_TESTS_ENABLED]
+    override fun enabled(): Boolean = super.enabled() && featureEnabled(INSTRUMENTATION_COMPATIBILITY_TESTS_ENABLED)
 
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         className == COMPATIBILITY_TEST_CLASS_NAME
 
+    override fun permitIndex() = PermitIndex(classNames = setOf(COMPATIBILITY_TEST_CLASS_NAME))
+
     override fun transform(className: String, ctClass: CtClass) {
         ctClass.getDeclaredMethod("retrieve").setBody(
             """             
@@ -22,11 +22,14 @@ import javassist.CtClass
 import javassist.NotFoundException
 import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
+import com.epam.drill.agent.instrument.DrillHeadersCollector
 import com.epam.drill.agent.instrument.HeadersProcessor
+import com.epam.drill.agent.instrument.cacheFingerprint
 import com.epam.drill.agent.common.request.HeadersRetriever
 import com.epam.drill.agent.instrument.AbstractPropagationTransformer
 import com.epam.drill.agent.instrument.TOMCAT_HTTP_FILTER
 import com.epam.drill.agent.instrument.http.AbstractHttpTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for Tomcat web server
@@ -45,11 +48,16 @@ abstract class TomcatHttpServerTransformerObject(
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         TOMCAT_HTTP_FILTER == className
 
+    override fun permitIndex() = PermitIndex(classNames = setOf(TOMCAT_HTTP_FILTER))
+
+    override fun cacheFingerprint() = headersRetriever.cacheFingerprint()
+
     override fun transform(className: String, ctClass: CtClass) {
         val adminHeader = headersRetriever.adminAddressHeader()
         val adminUrl = headersRetriever.adminAddressValue()
         val agentIdHeader = headersRetriever.agentIdHeader()
         val agentIdValue = headersRetriever.agentIdHeaderValue()
+        val sessionHeader = headersRetriever.sessionHeader()
         logger.debug { "transform: Starting TomcatHttpServerTransformer with admin host $adminUrl..." }
         val method = try {
             ctClass.getMethod("doFilter", "(Ljavax/servlet/ServletRequest;Ljavax/servlet/ServletResponse;)V")
@@ -66,17 +74,19 @@ abstract class TomcatHttpServerTransformerObject(
                     tomcatResponse.addHeader("$agentIdHeader", "$agentIdValue");
                 }
                 org.apache.catalina.connector.RequestFacade tomcatRequest = (org.apache.catalina.connector.RequestFacade)${'$'}1;
-                java.util.Map/*<java.lang.String, java.lang.String>*/ allHeaders = new java.util.HashMap();
+                java.util.Map/*<java.lang.String, java.lang.String>*/ drillHeaders = null;
                 java.util.Enumeration/*<String>*/ headerNames = tomcatRequest.getHeaderNames();
                 while (headerNames.hasMoreElements()) {
                     java.lang.String headerName = (java.lang.String) headerNames.nextElement();
+                    if (!${DrillHeadersCollector::class.java.name}.${DrillHeadersCollector::isCollected.name}(headerName, "$sessionHeader")) continue;
                     java.lang.String header = tomcatRequest.getHeader(headerName);
-                    allHeaders.put(headerName, header);
-                    if (headerName.startsWith("${HeadersProcessor.DRILL_HEADER_PREFIX}") && tomcatResponse.getHeader(headerName) == null) {
+                    drillHeaders = ${DrillHeadersCollector::class.java.name}.${DrillHeadersCollector::collect.name}(drillHeaders, headerName, header);
+                    if (header != null && headerName.startsWith("${HeadersProcessor.DRILL_HEADER_PREFIX}") && tomcatResponse.getHeader(headerName) == null) {
                         tomcatResponse.addHeader(headerName, header);
                     }
                 }
-                ${this::class.java.name}.INSTANCE.${this::storeHeaders.name}(allHeaders);
+                ${this::class.java.name}.INSTANCE.${this::storeRequestHeaders.name}(drillHeaders);
+                if (drillHeaders != null) drillHeaders.clear();
             }
             """.trimIndent()
         )
@@ -84,7 +94,8 @@ abstract class TomcatHttpServerTransformerObject(
             { insertAfter(it, true) },
             """
             ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
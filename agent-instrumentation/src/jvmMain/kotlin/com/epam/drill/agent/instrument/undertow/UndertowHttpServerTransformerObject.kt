@@ -18,14 +18,19 @@ package com.epam.drill.agent.instrument.undertow
 import com.epam.drill.agent.common.configuration.AgentConfiguration
 import com.epam.drill.agent.common.configuration.AgentParameters
 import com.epam.drill.agent.instrument.AbstractTransformerObject
+import com.epam.drill.agent.instrument.DrillHeadersCollector
 import com.epam.drill.agent.instrument.HeadersProcessor
+import com.epam.drill.agent.instrument.cacheFingerprint
 import com.epam.drill.agent.common.request.HeadersRetriever
 import com.epam.drill.agent.instrument.AbstractPropagationTransformer
 import com.epam.drill.agent.instrument.UNDERTOW_SERVER_CONNECTORS
 import com.epam.drill.agent.instrument.http.AbstractHttpTransformerObject
 import javassist.CtBehavior
 import javassist.CtClass
+import javassist.CtField
+import javassist.CtMethod
 import mu.KotlinLogging
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for simple Undertow-based web servers
@@ -43,13 +48,39 @@ abstract class UndertowHttpServerTransformerObject(
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         UNDERTOW_SERVER_CONNECTORS == className
 
+    override fun permitIndex() = PermitIndex(classNames = setOf(UNDERTOW_SERVER_CONNECTORS))
+
+    override fun cacheFingerprint() = headersRetriever.cacheFingerprint()
+
+    /**
+     * Header name constants are added to the transformed class as static fields, so class can't be retransformed.
+     */
+    override fun retransformable() = false
+
     override fun transform(className: String, ctClass: CtClass) {
         val adminHeader = headersRetriever.adminAddressHeader()
         val adminUrl = headersRetriever.adminAddressValue()
         val agentIdHeader = headersRetriever.agentIdHeader()
         val agentIdValue = headersRetriever.agentIdHeaderValue()
+        val sessionHeader = headersRetriever.sessionHeader()
 
         logger.debug { "transform: Starting UndertowTransformer with admin host $adminUrl..." }
+        addHeaderNameField(ctClass, "drillAdminHeader", adminHeader)
+        addHeaderNameField(ctClass, "drillAgentIdHeader", agentIdHeader)
+        addHeaderNameField(ctClass, "drillSessionHeader", sessionHeader)
+        CtMethod.make(
+            """
+            private static boolean isDrillHeader(io.undertow.util.HttpString headerName) {
+                java.lang.String prefix = "${HeadersProcessor.DRILL_HEADER_PREFIX}";
+                if (headerName.length() < prefix.length()) return false;
+                for (int i = 0; i < prefix.length(); i++) {
+                    if (java.lang.Character.toLowerCase((char) headerName.byteAt(i)) != prefix.charAt(i)) return false;
+                }
+                return true;
+            }
+            """.trimIndent(),
+            ctClass
+        ).also(ctClass::addMethod)
         val method = ctClass.getMethod("executeRootHandler", "(Lio/undertow/server/HttpHandler;Lio/undertow/server/HttpServerExchange;)V")
 
         method.insertCatching(
@@ -57,28 +88,29 @@ abstract class UndertowHttpServerTransformerObject(
             """
             if ($1 instanceof io.undertow.server.HttpHandler && $2 instanceof io.undertow.server.HttpServerExchange) {
                 io.undertow.util.HeaderMap responseHeaders = (io.undertow.util.HeaderMap) $2.getResponseHeaders();
-                if (responseHeaders.get("$adminHeader") == null || !responseHeaders.get("$adminHeader").contains("$adminUrl")) {              
-                    responseHeaders.add(io.undertow.util.HttpString.tryFromString("$adminHeader"), "$adminUrl");
-                    responseHeaders.add(io.undertow.util.HttpString.tryFromString("$agentIdHeader"), "$agentIdValue");
+                io.undertow.util.HeaderValues adminValues = responseHeaders.get(drillAdminHeader);
+                if (adminValues == null || !adminValues.contains("$adminUrl")) {
+                    responseHeaders.add(drillAdminHeader, "$adminUrl");
+                    responseHeaders.add(drillAgentIdHeader, "$agentIdValue");
                 }
-        
+
                 io.undertow.util.HeaderMap requestHeaders = (io.undertow.util.HeaderMap) $2.getRequestHeaders();
-                java.util.Iterator/*io.undertow.util.HttpString>*/ headerNames = requestHeaders.getHeaderNames().iterator();
-                java.util.Map/*<java.lang.String, java.lang.String>*/ drillHeaders = new java.util.HashMap();
-                while (headerNames.hasNext()) {
-                    java.lang.String headerName = (java.lang.String) headerNames.next().toString();
-                    java.util.Iterator/*<java.lang.String>*/ requestHeaderIterator = requestHeaders.get(io.undertow.util.HttpString.tryFromString(headerName)).iterator();
-                    while (requestHeaderIterator.hasNext()) {
-                        java.lang.String header = (java.lang.String) requestHeaderIterator.next();
-                        if (headerName.startsWith("${HeadersProcessor.DRILL_HEADER_PREFIX}")) {
-                            drillHeaders.put(headerName, header);
-                            if (responseHeaders.get(io.undertow.util.HttpString.tryFromString(headerName)) == null) {
-                                responseHeaders.add(io.undertow.util.HttpString.tryFromString(headerName), header);
-                            }
-                        }
+                java.util.Map/*<java.lang.String, java.lang.String>*/ drillHeaders = null;
+                for (long position = requestHeaders.fastIterateNonEmpty(); position != -1L; position = requestHeaders.fiNextNonEmpty(position)) {
+                    io.undertow.util.HeaderValues values = requestHeaders.fiCurrent(position);
+                    io.undertow.util.HttpString headerName = values.getHeaderName();
+                    boolean drillHeader = isDrillHeader(headerName);
+                    if (!drillHeader && !headerName.equals(drillSessionHeader) && !headerName.equals(io.undertow.util.Headers.COOKIE)) continue;
+                    java.lang.String name = headerName.toString();
+                    boolean respond = drillHeader && !responseHeaders.contains(headerName);
+                    for (int i = 0; i < values.size(); i++) {
+                        java.lang.String header = values.get(i);
+                        drillHeaders = ${DrillHeadersCollector::class.java.name}.${DrillHeadersCollector::collect.name}(drillHeaders, name, header);
+                        if (respond && header != null) responseHeaders.add(headerName, header);
                     }
                 }
-                ${this::class.java.name}.INSTANCE.${this::storeHeaders.name}(drillHeaders);
+                ${this::class.java.name}.INSTANCE.${this::storeRequestHeaders.name}(drillHeaders);
+                if (drillHeaders != null) drillHeaders.clear();
             }
             """.trimIndent()
         )
@@ -86,8 +118,14 @@ abstract class UndertowHttpServerTransformerObject(
             { insertAfter(it, true) },
             """
             ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
+    private fun addHeaderNameField(ctClass: CtClass, fieldName: String, headerName: String) = CtField.make(
+        "private static final io.undertow.util.HttpString $fieldName = new io.undertow.util.HttpString(\"$headerName\");",
+        ctClass
+    ).also(ctClass::addField)
+
 }
@@ -24,5 +24,6 @@ import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTR
 
 abstract class AbstractWsTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor,
     AbstractPropagationTransformer(agentConfiguration) {
-    override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_WS_ENABLED]
+    override fun enabled(): Boolean = super.enabled() && featureEnabled(INSTRUMENTATION_WS_ENABLED)
+    override fun retransformable() = false
 }
\ No newline at end of file
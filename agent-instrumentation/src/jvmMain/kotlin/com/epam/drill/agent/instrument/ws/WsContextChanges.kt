@@ -0,0 +1,112 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument.ws
+
+import java.nio.ByteBuffer
+import com.epam.drill.agent.instrument.DrillPayloadTrailer
+import com.epam.drill.agent.instrument.HeadersProcessor
+import com.epam.drill.agent.instrument.PayloadProcessor
+import com.epam.drill.agent.instrument.WeakIdentityMap
+
+/**
+ * Per-connection state of the WebSocket mode sending drill headers only on context changes.
+ *
+ * The mode is used for a connection if handshake headers of the peer contain
+ * [PayloadProcessor.HEADER_WS_CONTEXT_CHANGES], connections are identified by their handshake headers maps.
+ * The sender appends the payload trailer only if drill headers differ from the last sent ones,
+ * an empty trailer is sent when drill headers are cleared. The receiver remembers drill headers of the last
+ * received trailer and stores them for messages without the payload trailer.
+ *
+ * Messages sent concurrently to the same connection with different contexts can be received in a different order
+ * than their trailers were decided, so the mode fits connections used by a single context at a time.
+ */
+object WsContextChanges {
+
+    private val connections = WeakIdentityMap<Any, ConnectionState>()
+
+    @JvmStatic
+    fun isContextChangesMode(handshakeHeaders: Map<String, String>?) =
+        handshakeHeaders?.get(PayloadProcessor.HEADER_WS_CONTEXT_CHANGES).toBoolean()
+
+    /**
+     * Returns `true` if the payload trailer should be appended to the message sent to the connection.
+     */
+    @JvmStatic
+    fun isSendRequired(headersProcessor: HeadersProcessor, handshakeHeaders: Map<String, String>?): Boolean {
+        if (!isContextChangesMode(handshakeHeaders)) return headersProcessor.hasHeaders()
+        val state = connectionState(handshakeHeaders!!)
+        val headers = headersProcessor.retrieveHeaders()?.takeIf(Map<String, String>::isNotEmpty)
+        val sent = state.sent
+        if (sent === headers || sent == headers) return false
+        state.sent = headers
+        return true
+    }
+
+    /**
+     * Remembers drill headers of the payload trailer found at the absolute [trailerIndex] of the received [message],
+     * or stores the last received drill headers if [trailerIndex] is -1.
+     */
+    @JvmStatic
+    fun received(
+        headersProcessor: HeadersProcessor,
+        handshakeHeaders: Map<String, String>?,
+        message: ByteBuffer,
+        trailerIndex: Int
+    ) {
+        if (!isContextChangesMode(handshakeHeaders)) return
+        val trailer = trailerIndex.takeIf { it != -1 }?.let { DrillPayloadTrailer.headers(message, it) }
+        received(headersProcessor, connectionState(handshakeHeaders!!), trailer)
+    }
+
+    /**
+     * Remembers drill headers of the payload trailer found at [trailerIndex] of the received [message],
+     * or stores the last received drill headers if [trailerIndex] is -1.
+     */
+    @JvmStatic
+    fun received(
+        headersProcessor: HeadersProcessor,
+        handshakeHeaders: Map<String, String>?,
+        message: String,
+        trailerIndex: Int
+    ) {
+        if (!isContextChangesMode(handshakeHeaders)) return
+        val trailer = trailerIndex.takeIf { it != -1 }?.let {
+            DrillPayloadTrailer.headers(
+                message.substring(it + PayloadProcessor.PAYLOAD_PREFIX.length, message.length - PayloadProcessor.PAYLOAD_SUFFIX.length)
+            )
+        }
+        received(headersProcessor, connectionState(handshakeHeaders!!), trailer)
+    }
+
+    /**
+     * An empty trailer means the sender cleared drill headers, so following messages have no context.
+     */
+    private fun received(headersProcessor: HeadersProcessor, state: ConnectionState, trailer: Map<String, String>?) {
+        if (trailer != null) state.received = trailer.takeIf(Map<String, String>::isNotEmpty)
+        else state.received?.let(headersProcessor::storeHeaders)
+    }
+
+    private fun connectionState(handshakeHeaders: Map<String, String>) =
+        connections.getOrPut(handshakeHeaders, ::ConnectionState)
+
+    private class ConnectionState {
+        @Volatile
+        var sent: Map<String, String>? = null
+        @Volatile
+        var received: Map<String, String>? = null
+    }
+
+}
@@ -23,23 +23,31 @@ import javassist.CtField
 import javassist.CtMethod
 import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
+import com.epam.drill.agent.instrument.ByteBufferPayloadProcessor
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.PayloadProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.ws.WsContextChanges
+import com.epam.drill.agent.instrument.PermitIndex
 
 abstract class Jetty10WsMessagesTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor,
-    PayloadProcessor, AbstractWsTransformerObject(agentConfiguration) {
+    ByteBufferPayloadProcessor, AbstractWsTransformerObject(agentConfiguration) {
 
     override val logger = KotlinLogging.logger {}
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    private val permittedClassNames = setOf(
         "org/eclipse/jetty/websocket/core/client/WebSocketCoreClient",
         "org/eclipse/jetty/websocket/javax/common/JavaxWebSocketFrameHandler",
         "org/eclipse/jetty/websocket/javax/common/JavaxWebSocketRemoteEndpoint",
         "org/eclipse/jetty/websocket/javax/client/internal/JsrUpgradeListener",
         "org/eclipse/jetty/websocket/javax/server/internal/JavaxWebSocketCreator",
         "org/eclipse/jetty/websocket/javax/server/internal/JavaxWebSocketServerFrameHandlerFactory"
-    ).contains(className)
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting Jetty10WsMessagesTransformerObject for $className..." }
@@ -103,16 +111,16 @@ abstract class Jetty10WsMessagesTransformerObject(agentConfiguration: AgentConfi
             """
             if ($1.isDataFrame() && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.handshakeHeaders)) {
-                byte[] bytes = new byte[$1.getPayload().limit()];
-                int position = $1.getPayload().position();                
-                $1.getPayload().get(bytes);
-                $1.getPayload().position(position);
-                java.lang.Integer drillIndex = ${this::class.java.name}.INSTANCE.${this::retrieveDrillHeadersIndex.name}(bytes);
-                if (drillIndex != null) {
-                    $1.getPayload().limit(drillIndex.intValue());
+                java.nio.ByteBuffer payload = $1.getPayload();
+                java.nio.ByteBuffer retrieved = ${this::class.java.name}.INSTANCE.retrieveDrillHeaders(payload);
+                int drillIndex = retrieved != payload ? payload.position() + retrieved.remaining() : -1;
+                ${WsContextChanges::class.java.name}.${WsContextChanges::received.name}(${this::class.java.name}.INSTANCE, this.handshakeHeaders, payload, drillIndex);
+                if (drillIndex != -1) {
+                    payload.limit(drillIndex);
                 }
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
         acceptMessageMethod.insertCatching(
             { insertAfter(it, true) },
@@ -121,7 +129,8 @@ abstract class Jetty10WsMessagesTransformerObject(agentConfiguration: AgentConfi
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.handshakeHeaders)) {
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
@@ -131,12 +140,12 @@ abstract class Jetty10WsMessagesTransformerObject(agentConfiguration: AgentConfi
             CtBehavior::insertBefore,
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
-                    && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()
-                    && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(((org.eclipse.jetty.websocket.javax.common.JavaxWebSocketFrameHandler)this.session.getFrameHandler()).getHandshakeHeaders())) {
-                byte[] bytes = new byte[$1.getPayload().limit()];
-                $1.getPayload().get(bytes);
-                $1.getPayload().clear();
-                $1.setPayload(java.nio.ByteBuffer.wrap(${this::class.java.name}.INSTANCE.storeDrillHeaders(bytes)));
+                    && this.session.getFrameHandler() instanceof org.eclipse.jetty.websocket.javax.common.JavaxWebSocketFrameHandler) {
+                java.util.Map/*<java.lang.String, java.lang.String>*/ handshakeHeaders = ((org.eclipse.jetty.websocket.javax.common.JavaxWebSocketFrameHandler)this.session.getFrameHandler()).getHandshakeHeaders();
+                if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(handshakeHeaders)
+                        && ${WsContextChanges::class.java.name}.${WsContextChanges::isSendRequired.name}(${this::class.java.name}.INSTANCE, handshakeHeaders)) {
+                    $1.setPayload(${this::class.java.name}.INSTANCE.storeDrillHeaders($1.getPayload()));
+                }
             }
             """.trimIndent()
         )
@@ -191,6 +200,7 @@ abstract class Jetty10WsMessagesTransformerObject(agentConfiguration: AgentConfi
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()) {
                 $1.addHeader(new org.eclipse.jetty.http.HttpField("${PayloadProcessor.HEADER_WS_PER_MESSAGE}", "true"));
+                $1.addHeader(new org.eclipse.jetty.http.HttpField("${PayloadProcessor.HEADER_WS_CONTEXT_CHANGES}", "true"));
             }
             """.trimIndent()
         )
@@ -205,6 +215,7 @@ abstract class Jetty10WsMessagesTransformerObject(agentConfiguration: AgentConfi
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()) {
                 $2.setHeader("${PayloadProcessor.HEADER_WS_PER_MESSAGE}", "true");
+                $2.setHeader("${PayloadProcessor.HEADER_WS_CONTEXT_CHANGES}", "true");
             }
             """.trimIndent()
         )
@@ -24,16 +24,18 @@ import javassist.CtMethod
 import javassist.CtNewMethod
 import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
+import com.epam.drill.agent.instrument.ByteBufferPayloadProcessor
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.PayloadProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 abstract class Jetty11WsMessagesTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor,
-    PayloadProcessor, AbstractWsTransformerObject(agentConfiguration) {
+    ByteBufferPayloadProcessor, AbstractWsTransformerObject(agentConfiguration) {
 
     override val logger = KotlinLogging.logger {}
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    private val permittedClassNames = setOf(
         "org/eclipse/jetty/websocket/core/FrameHandler",
         "org/eclipse/jetty/websocket/core/internal/WebSocketCoreSession",
         "org/eclipse/jetty/websocket/core/client/WebSocketCoreClient",
@@ -42,7 +44,12 @@ abstract class Jetty11WsMessagesTransformerObject(agentConfiguration: AgentConfi
         "org/eclipse/jetty/websocket/server/internal/JettyServerFrameHandlerFactory",
         "org/eclipse/jetty/websocket/jakarta/common/JakartaWebSocketFrameHandler",
         "org/eclipse/jetty/websocket/jakarta/client/internal/JsrUpgradeListener"
-    ).contains(className)
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting Jetty11WsMessagesTransformerObject for $className..." }
@@ -122,16 +129,14 @@ abstract class Jetty11WsMessagesTransformerObject(agentConfiguration: AgentConfi
             """
             if ($1.isDataFrame() && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.handshakeHeaders)) {
-                byte[] bytes = new byte[$1.getPayload().limit()];
-                int position = $1.getPayload().position();                
-                $1.getPayload().get(bytes);
-                $1.getPayload().position(position);
-                java.lang.Integer drillIndex = ${this::class.java.name}.INSTANCE.${this::retrieveDrillHeadersIndex.name}(bytes);
-                if (drillIndex != null) {
-                    $1.getPayload().limit(drillIndex.intValue());
+                java.nio.ByteBuffer payload = $1.getPayload();
+                java.nio.ByteBuffer retrieved = ${this::class.java.name}.INSTANCE.retrieveDrillHeaders(payload);
+                if (retrieved != payload) {
+                    payload.limit(payload.position() + retrieved.remaining());
                 }
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
         method.insertCatching(
             { insertAfter(it, true) },
@@ -140,7 +145,8 @@ abstract class Jetty11WsMessagesTransformerObject(agentConfiguration: AgentConfi
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.handshakeHeaders)) {
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
@@ -152,10 +158,7 @@ abstract class Jetty11WsMessagesTransformerObject(agentConfiguration: AgentConfi
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
                     && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.handler.getHandshakeHeaders())) {
-                byte[] bytes = new byte[$1.getPayload().limit()];
-                $1.getPayload().get(bytes);
-                $1.getPayload().clear();
-                $1.setPayload(java.nio.ByteBuffer.wrap(${this::class.java.name}.INSTANCE.storeDrillHeaders(bytes)));
+                $1.setPayload(${this::class.java.name}.INSTANCE.storeDrillHeaders($1.getPayload()));
             }
             """.trimIndent()
         )
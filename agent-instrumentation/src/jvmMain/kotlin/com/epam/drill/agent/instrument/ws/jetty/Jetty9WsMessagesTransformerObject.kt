@@ -24,23 +24,30 @@ import javassist.CtMethod
 import javassist.NotFoundException
 import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
+import com.epam.drill.agent.instrument.ByteBufferPayloadProcessor
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.PayloadProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
-abstract class Jetty9WsMessagesTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor, PayloadProcessor,
+abstract class Jetty9WsMessagesTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor, ByteBufferPayloadProcessor,
     AbstractWsTransformerObject(agentConfiguration) {
 
     override val logger = KotlinLogging.logger {}
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    private val permittedClassNames = setOf(
         "org/eclipse/jetty/websocket/common/WebSocketSession",
         "org/eclipse/jetty/websocket/common/io/AbstractWebSocketConnection",
         "org/eclipse/jetty/websocket/common/events/AbstractEventDriver",
         "org/eclipse/jetty/websocket/common/WebSocketRemoteEndpoint",
         "org/eclipse/jetty/websocket/client/WebSocketClient",
-        "org/eclipse/jetty/websocket/server/HandshakeRFC6455",
-    ).contains(className)
+        "org/eclipse/jetty/websocket/server/HandshakeRFC6455"
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting Jetty9WsMessagesTransformerObject for $className..." }
@@ -125,16 +132,14 @@ abstract class Jetty9WsMessagesTransformerObject(agentConfiguration: AgentConfig
             if (($1.getOpCode() == org.eclipse.jetty.websocket.common.OpCode.TEXT || $1.getOpCode() == org.eclipse.jetty.websocket.common.OpCode.BINARY)
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.session.getHandshakeHeaders())) {
-                byte[] bytes = new byte[$1.getPayload().limit()];
-                int position = $1.getPayload().position();                
-                $1.getPayload().get(bytes);
-                $1.getPayload().position(position);
-                java.lang.Integer drillIndex = ${this::class.java.name}.INSTANCE.${this::retrieveDrillHeadersIndex.name}(bytes);
-                if (drillIndex != null) {
-                    $1.getPayload().limit(drillIndex.intValue());
+                java.nio.ByteBuffer payload = $1.getPayload();
+                java.nio.ByteBuffer retrieved = ${this::class.java.name}.INSTANCE.retrieveDrillHeaders(payload);
+                if (retrieved != payload) {
+                    payload.limit(payload.position() + retrieved.remaining());
                 }
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
         method.insertCatching(
             { insertAfter(it, true) },
@@ -144,7 +149,8 @@ abstract class Jetty9WsMessagesTransformerObject(agentConfiguration: AgentConfig
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.session.getHandshakeHeaders())) {
                  ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
@@ -162,10 +168,7 @@ abstract class Jetty9WsMessagesTransformerObject(agentConfiguration: AgentConfig
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
                     && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(((org.eclipse.jetty.websocket.common.io.AbstractWebSocketConnection)this.connection).getSession().getHandshakeHeaders())) {
-                byte[] bytes = new byte[$1.limit()];
-                $1.get(bytes);
-                $1.clear();
-                $1 = java.nio.ByteBuffer.wrap(${this::class.java.name}.INSTANCE.storeDrillHeaders(bytes));
+                $1 = ${this::class.java.name}.INSTANCE.storeDrillHeaders($1);
             }
             """.trimIndent()
         ctClass.getMethod("sendString", "(Ljava/lang/String;)V")
@@ -190,10 +193,7 @@ abstract class Jetty9WsMessagesTransformerObject(agentConfiguration: AgentConfig
                 if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
                         && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()
                         && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(((org.eclipse.jetty.websocket.common.io.AbstractWebSocketConnection)this.connection).getSession().getHandshakeHeaders())) {
-                    byte[] bytes = new byte[$1.getPayload().limit()];
-                    $1.getPayload().get(bytes);
-                    $1.getPayload().clear();
-                    $1.setPayload(java.nio.ByteBuffer.wrap(${this::class.java.name}.INSTANCE.storeDrillHeaders(bytes)));
+                    $1.setPayload(${this::class.java.name}.INSTANCE.storeDrillHeaders($1.getPayload()));
                 }
                 """.trimIndent()
             )
@@ -23,17 +23,22 @@ import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 abstract class JettyWsClientTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor,
     AbstractWsTransformerObject(agentConfiguration) {
 
     override val logger = KotlinLogging.logger {}
 
+    private val permittedClassNames = setOf(
+        "org/eclipse/jetty/websocket/client/WebSocketClient",
+        "org/eclipse/jetty/websocket/core/client/WebSocketCoreClient"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "org/eclipse/jetty/websocket/client/WebSocketClient",
-            "org/eclipse/jetty/websocket/core/client/WebSocketCoreClient"
-        ).contains(className)
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting JettyWsClientTransformer for $className..." }
@@ -24,6 +24,7 @@ import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for Jetty based websockets
@@ -36,15 +37,19 @@ abstract class JettyWsServerTransformerObject(agentConfiguration: AgentConfigura
 
     override val logger = KotlinLogging.logger {}
 
+    private val permittedClassNames = setOf(
+        "org/eclipse/jetty/websocket/common/events/AbstractEventDriver",
+        "org/eclipse/jetty/websocket/common/JettyWebSocketFrameHandler",
+        "org/eclipse/jetty/websocket/javax/common/JavaxWebSocketFrameHandler",
+        "org/eclipse/jetty/websocket/javax/common/UpgradeRequest",
+        "org/eclipse/jetty/websocket/javax/client/internal/JavaxClientUpgradeRequest",
+        "org/eclipse/jetty/websocket/javax/server/internal/JavaxServerUpgradeRequest"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "org/eclipse/jetty/websocket/common/events/AbstractEventDriver",
-            "org/eclipse/jetty/websocket/common/JettyWebSocketFrameHandler",
-            "org/eclipse/jetty/websocket/javax/common/JavaxWebSocketFrameHandler",
-            "org/eclipse/jetty/websocket/javax/common/UpgradeRequest",
-            "org/eclipse/jetty/websocket/javax/client/internal/JavaxClientUpgradeRequest",
-            "org/eclipse/jetty/websocket/javax/server/internal/JavaxServerUpgradeRequest"
-        ).contains(className)
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting JettyWsServerTransformerObject for $className..." }
@@ -96,7 +101,8 @@ abstract class JettyWsServerTransformerObject(agentConfiguration: AgentConfigura
                     && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()) {
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
@@ -128,7 +134,8 @@ abstract class JettyWsServerTransformerObject(agentConfiguration: AgentConfigura
             if ($1.isDataFrame() && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()) {
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
@@ -160,7 +167,8 @@ abstract class JettyWsServerTransformerObject(agentConfiguration: AgentConfigura
             if ($1.isDataFrame() && this.upgradeRequest.getHeadersMap() != null && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()) {
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
@@ -23,18 +23,23 @@ import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 abstract class NettyWsClientTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor,
     AbstractWsTransformerObject(agentConfiguration) {
 
     override val logger = KotlinLogging.logger {}
 
+    private val permittedClassNames = setOf(
+        "io/netty/bootstrap/Bootstrap",
+        "io/netty/handler/codec/http/websocketx/WebSocketClientHandshaker",
+        "org/springframework/web/reactive/socket/client/ReactorNettyWebSocketClient"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "io/netty/bootstrap/Bootstrap",
-            "io/netty/handler/codec/http/websocketx/WebSocketClientHandshaker",
-            "org/springframework/web/reactive/socket/client/ReactorNettyWebSocketClient"
-        ).contains(className)
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting NettyWsClientTransformer for $className..." }
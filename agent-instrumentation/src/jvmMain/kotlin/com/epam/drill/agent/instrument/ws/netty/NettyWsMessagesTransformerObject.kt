@@ -21,21 +21,29 @@ import javassist.CtBehavior
 import javassist.CtClass
 import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
+import com.epam.drill.agent.instrument.ByteBufferPayloadProcessor
+import com.epam.drill.agent.instrument.DrillPayloadTrailer
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.PayloadProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.ws.WsContextChanges
+import com.epam.drill.agent.instrument.PermitIndex
 
-abstract class NettyWsMessagesTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor, PayloadProcessor,
+abstract class NettyWsMessagesTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor, ByteBufferPayloadProcessor,
     AbstractWsTransformerObject(agentConfiguration) {
 
     override val logger = KotlinLogging.logger {}
 
+    private val permittedClassNames = setOf(
+        "io/netty/channel/AbstractChannelHandlerContext",
+        "io/netty/handler/codec/http/websocketx/WebSocketServerHandshaker",
+        "io/netty/handler/codec/http/websocketx/WebSocketClientHandshaker"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "io/netty/channel/AbstractChannelHandlerContext",
-            "io/netty/handler/codec/http/websocketx/WebSocketServerHandshaker",
-            "io/netty/handler/codec/http/websocketx/WebSocketClientHandshaker"
-        ).contains(className)
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting NettyWsMessagesTransformer for $className..." }
@@ -57,17 +65,17 @@ abstract class NettyWsMessagesTransformerObject(agentConfiguration: AgentConfigu
                 java.util.Map drillHeaders = (java.util.Map) drillContextAttr.get();
                 if(${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(drillHeaders)) {
                     io.netty.buffer.ByteBuf messageBuf = (($WEBSOCKET_FRAME_COMMON)$1).content();
-                    byte[] messageBytes = new byte[messageBuf.readableBytes()];
-                    int readerIndex = messageBuf.readerIndex();
-                    messageBuf.readBytes(messageBytes);
-                    messageBuf.readerIndex(readerIndex);
-                    java.lang.Integer drillIndex = ${this::class.java.name}.INSTANCE.${this::retrieveDrillHeadersIndex.name}(messageBytes);
-                    if (drillIndex != null) {
-                        $1 = (($WEBSOCKET_FRAME_COMMON)$1).replace(messageBuf.slice(0, drillIndex.intValue()));
+                    java.nio.ByteBuffer message = messageBuf.nioBuffer();
+                    java.nio.ByteBuffer retrieved = ${this::class.java.name}.INSTANCE.retrieveDrillHeaders(message);
+                    int drillIndex = retrieved != message ? message.position() + retrieved.remaining() : -1;
+                    ${WsContextChanges::class.java.name}.${WsContextChanges::received.name}(${this::class.java.name}.INSTANCE, drillHeaders, message, drillIndex);
+                    if (drillIndex != -1) {
+                        messageBuf.writerIndex(messageBuf.readerIndex() + retrieved.remaining());
                     }
                 }
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
         invokeChannelReadMethod.insertCatching(
             { insertAfter(it, true) },
@@ -75,36 +83,40 @@ abstract class NettyWsMessagesTransformerObject(agentConfiguration: AgentConfigu
             if ($1 instanceof $WEBSOCKET_FRAME_BINARY || $1 instanceof $WEBSOCKET_FRAME_TEXT && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()) {
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
         ctClass.getMethod("write", "(Ljava/lang/Object;ZLio/netty/channel/ChannelPromise;)V").insertCatching(
             CtBehavior::insertBefore,
             """
             if (($1 instanceof $WEBSOCKET_FRAME_BINARY || $1 instanceof $WEBSOCKET_FRAME_TEXT)
-                    && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
-                    && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()) {
+                    && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()) {
                 io.netty.util.AttributeKey drillContextKey = io.netty.util.AttributeKey.valueOf("$DRILL_WS_CONTEXT_KEY");                                            
                 io.netty.util.Attribute drillContextAttr = this.channel().attr(drillContextKey);
                 java.util.Map drillHeaders = (java.util.Map) drillContextAttr.get();
-                if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(drillHeaders)) {
-                    io.netty.buffer.ByteBuf messageBuf = (($WEBSOCKET_FRAME_COMMON)$1).content();
-                    byte[] messageBytes = new byte[messageBuf.readableBytes()];
-                    messageBuf.readBytes(messageBytes);
-                    messageBytes = ${this::class.java.name}.INSTANCE.storeDrillHeaders(messageBytes);
-                    (($WEBSOCKET_FRAME_COMMON)$1).release();
-                    $1 = (($WEBSOCKET_FRAME_COMMON)$1).replace(io.netty.buffer.Unpooled.wrappedBuffer(messageBytes));
+                if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(drillHeaders)
+                        && ${WsContextChanges::class.java.name}.${WsContextChanges::isSendRequired.name}(${this::class.java.name}.INSTANCE, drillHeaders)) {
+                    io.netty.buffer.ByteBuf trailerBuf = io.netty.buffer.Unpooled.wrappedBuffer(${this::class.java.name}.INSTANCE.${this::retrieveDrillHeadersTrailer.name}());
+                    io.netty.buffer.ByteBuf messageBuf = io.netty.buffer.Unpooled.wrappedBuffer(new io.netty.buffer.ByteBuf[] { (($WEBSOCKET_FRAME_COMMON)$1).content(), trailerBuf });
+                    $1 = (($WEBSOCKET_FRAME_COMMON)$1).replace(messageBuf);
                 }
             }
             """.trimIndent()
         )
     }
 
+    /**
+     * Returns the payload trailer with current drill headers, appended to outgoing frames as a separate component.
+     */
+    fun retrieveDrillHeadersTrailer() = DrillPayloadTrailer.trailer(retrieveHeaders()).encodeToByteArray()
+
     private fun transformServerHandshaker(ctClass: CtClass) {
         val sendPerMessageHeaderCode =
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()) {
                 if ($3 == null) $3 = new io.netty.handler.codec.http.DefaultHttpHeaders();
                 $3.set("${PayloadProcessor.HEADER_WS_PER_MESSAGE}", "true");
+                $3.set("${PayloadProcessor.HEADER_WS_CONTEXT_CHANGES}", "true");
             }
             """.trimIndent()
         ctClass.getMethod(
@@ -127,6 +139,7 @@ abstract class NettyWsMessagesTransformerObject(agentConfiguration: AgentConfigu
                 """
                 if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()) {
                     this.customHeaders.add("${PayloadProcessor.HEADER_WS_PER_MESSAGE}", "true");
+                    this.customHeaders.add("${PayloadProcessor.HEADER_WS_CONTEXT_CHANGES}", "true");
                 }
                 """.trimIndent()
             )
@@ -23,6 +23,7 @@ import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for simple Netty-based web servers
@@ -35,11 +36,15 @@ abstract class NettyWsServerTransformerObject(agentConfiguration: AgentConfigura
 
     override val logger = KotlinLogging.logger {}
 
+    private val permittedClassNames = setOf(
+        "io/netty/channel/AbstractChannelHandlerContext",
+        "io/netty/handler/codec/http/websocketx/WebSocketServerHandshaker"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "io/netty/channel/AbstractChannelHandlerContext",
-            "io/netty/handler/codec/http/websocketx/WebSocketServerHandshaker"
-        ).contains(className)
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting NettyWsServerTransformerObject for $className..." }
@@ -70,7 +75,8 @@ abstract class NettyWsServerTransformerObject(agentConfiguration: AgentConfigura
             if ($1 instanceof $WEBSOCKET_FRAME_BINARY || $1 instanceof $WEBSOCKET_FRAME_TEXT) {
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
@@ -24,6 +24,7 @@ import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 abstract class TomcatWsClientTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor,
     AbstractWsTransformerObject(agentConfiguration) {
@@ -33,6 +34,8 @@ abstract class TomcatWsClientTransformerObject(agentConfiguration: AgentConfigur
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         "org/apache/tomcat/websocket/WsWebSocketContainer" == className
 
+    override fun permitIndex() = PermitIndex(classNames = setOf("org/apache/tomcat/websocket/WsWebSocketContainer"))
+
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting TomcatWsClientTransformer..." }
         val signatures = sequenceOf(
@@ -24,24 +24,32 @@ import javassist.CtMethod
 import javassist.NotFoundException
 import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
+import com.epam.drill.agent.instrument.ByteBufferPayloadProcessor
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.PayloadProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.ws.WsContextChanges
+import com.epam.drill.agent.instrument.PermitIndex
 
-abstract class TomcatWsMessagesTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor, PayloadProcessor,
+abstract class TomcatWsMessagesTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor, ByteBufferPayloadProcessor,
     AbstractWsTransformerObject(agentConfiguration) {
 
     override val logger = KotlinLogging.logger {}
     private var openingSessionHeaders: ThreadLocal<Map<String, String>?> = ThreadLocal()
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    private val permittedClassNames = setOf(
         "org/apache/tomcat/websocket/WsSession",
         "org/apache/tomcat/websocket/WsFrameBase",
         "org/apache/tomcat/websocket/WsRemoteEndpointImplBase",
         "org/apache/tomcat/websocket/WsWebSocketContainer",
         "org/apache/tomcat/websocket/server/WsHttpUpgradeHandler",
         "org/apache/tomcat/websocket/server/UpgradeUtil"
-    ).contains(className)
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting TomcatWsMessagesTransformer for $className..." }
@@ -120,33 +128,41 @@ abstract class TomcatWsMessagesTransformerObject(agentConfiguration: AgentConfig
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.wsSession.getHandshakeHeaders())) {
-                java.lang.String retrieved = ${this::class.java.name}.INSTANCE.retrieveDrillHeaders(this.messageBufferText.toString());
+                java.lang.String message = this.messageBufferText.toString();
+                java.lang.String retrieved = ${this::class.java.name}.INSTANCE.retrieveDrillHeaders(message);
+                ${WsContextChanges::class.java.name}.${WsContextChanges::received.name}(${this::class.java.name}.INSTANCE, this.wsSession.getHandshakeHeaders(), message, retrieved != message ? retrieved.length() : -1);
                 this.messageBufferTextTmp = messageBufferText;
                 this.messageBufferText = java.nio.CharBuffer.wrap(retrieved);
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
         sendBinaryMethod.insertCatching(
             CtBehavior::insertBefore,
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.wsSession.getHandshakeHeaders())) {
-                byte[] bytes = new byte[$1.limit()];
-                $1.get(bytes);
-                $1 = java.nio.ByteBuffer.wrap(${this::class.java.name}.INSTANCE.retrieveDrillHeaders(bytes));
+                java.nio.ByteBuffer retrieved = ${this::class.java.name}.INSTANCE.retrieveDrillHeaders($1);
+                ${WsContextChanges::class.java.name}.${WsContextChanges::received.name}(${this::class.java.name}.INSTANCE, this.wsSession.getHandshakeHeaders(), $1, retrieved != $1 ? $1.position() + retrieved.remaining() : -1);
+                $1 = retrieved;
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
         sendTextMethod.insertCatching(
             { insertAfter(it, true) },
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.wsSession.getHandshakeHeaders())) {
-                this.messageBufferText = messageBufferTextTmp;
-                this.messageBufferText.clear();
+                if (this.messageBufferTextTmp != null) {
+                    this.messageBufferText = messageBufferTextTmp;
+                    this.messageBufferTextTmp = null;
+                    this.messageBufferText.clear();
+                }
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
         sendBinaryMethod.insertCatching(
             { insertAfter(it, true) },
@@ -155,7 +171,8 @@ abstract class TomcatWsMessagesTransformerObject(agentConfiguration: AgentConfig
                     && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.wsSession.getHandshakeHeaders())) {
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
@@ -163,20 +180,17 @@ abstract class TomcatWsMessagesTransformerObject(agentConfiguration: AgentConfig
         val wrapStringCode =
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
-                    && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()
-                    && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.wsSession.getHandshakeHeaders())) {
+                    && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.wsSession.getHandshakeHeaders())
+                    && ${WsContextChanges::class.java.name}.${WsContextChanges::isSendRequired.name}(${this::class.java.name}.INSTANCE, this.wsSession.getHandshakeHeaders())) {
                 $1 = ${this::class.java.name}.INSTANCE.storeDrillHeaders($1);
             }
             """.trimIndent()
         val wrapBinaryCode =
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()
-                    && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()
-                    && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.wsSession.getHandshakeHeaders())) {
-                byte[] bytes = new byte[$1.limit()];
-                $1.get(bytes);
-                $1.clear();
-                $1 = java.nio.ByteBuffer.wrap(${this::class.java.name}.INSTANCE.storeDrillHeaders(bytes));
+                    && ${this::class.java.name}.INSTANCE.${this::isPayloadProcessingSupported.name}(this.wsSession.getHandshakeHeaders())
+                    && ${WsContextChanges::class.java.name}.${WsContextChanges::isSendRequired.name}(${this::class.java.name}.INSTANCE, this.wsSession.getHandshakeHeaders())) {
+                $1 = ${this::class.java.name}.INSTANCE.storeDrillHeaders($1);
             }
             """.trimIndent()
         ctClass.getMethod("sendString", "(Ljava/lang/String;)V")
@@ -226,6 +240,7 @@ abstract class TomcatWsMessagesTransformerObject(agentConfiguration: AgentConfig
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()) {
                 ${'$'}_.put("${PayloadProcessor.HEADER_WS_PER_MESSAGE}", java.util.Collections.singletonList("true"));
+                ${'$'}_.put("${PayloadProcessor.HEADER_WS_CONTEXT_CHANGES}", java.util.Collections.singletonList("true"));
             }
             """.trimIndent()
         )
@@ -271,6 +286,7 @@ abstract class TomcatWsMessagesTransformerObject(agentConfiguration: AgentConfig
             """
             if (${this::class.java.name}.INSTANCE.${this::isPayloadProcessingEnabled.name}()) {
                 $3.setHeader("${PayloadProcessor.HEADER_WS_PER_MESSAGE}", "true");
+                $3.setHeader("${PayloadProcessor.HEADER_WS_CONTEXT_CHANGES}", "true");
             }
             """.trimIndent()
         )
@@ -23,6 +23,7 @@ import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for Tomcat based websockets
@@ -38,6 +39,8 @@ abstract class TomcatWsServerTransformerObject(agentConfiguration: AgentConfigur
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         "org/apache/tomcat/websocket/server/WsHttpUpgradeHandler" == className
 
+    override fun permitIndex() = PermitIndex(classNames = setOf("org/apache/tomcat/websocket/server/WsHttpUpgradeHandler"))
+
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting TomcatWsServerTransformer..." }
         val method = ctClass.getMethod(
@@ -66,7 +69,8 @@ abstract class TomcatWsServerTransformerObject(agentConfiguration: AgentConfigur
             if ($1 == org.apache.tomcat.util.net.SocketEvent.OPEN_READ && ${this::class.java.name}.INSTANCE.${this::hasHeaders.name}()) {
                 ${this::class.java.name}.INSTANCE.${this::removeHeaders.name}();
             }
-            """.trimIndent()
+            """.trimIndent(),
+            guarded = false
         )
     }
 
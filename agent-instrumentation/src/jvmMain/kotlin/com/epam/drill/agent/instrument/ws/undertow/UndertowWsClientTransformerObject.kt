@@ -26,16 +26,22 @@ import mu.KotlinLogging
 import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 abstract class UndertowWsClientTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor,
     AbstractWsTransformerObject(agentConfiguration) {
 
     override val logger = KotlinLogging.logger {}
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    private val permittedClassNames = setOf(
         "io/undertow/websockets/jsr/UndertowSession",
         "io/undertow/websockets/jsr/ServerWebSocketContainer\$ClientNegotiation"
-    ).contains(className) || "io/undertow/websockets/client/WebSocketClientHandshake" == superName
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        permittedClassNames.contains(className) || "io/undertow/websockets/client/WebSocketClientHandshake" == superName
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames, superNames = setOf("io/undertow/websockets/client/WebSocketClientHandshake"))
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting UndertowWsClientTransformer for $className..." }
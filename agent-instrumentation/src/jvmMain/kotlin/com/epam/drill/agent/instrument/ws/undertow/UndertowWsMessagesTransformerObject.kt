@@ -26,6 +26,7 @@ import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.instrument.PayloadProcessor
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 abstract class UndertowWsMessagesTransformerObject(agentConfiguration: AgentConfiguration) : HeadersProcessor,
     PayloadProcessor, AbstractWsTransformerObject(agentConfiguration) {
@@ -34,7 +35,7 @@ abstract class UndertowWsMessagesTransformerObject(agentConfiguration: AgentConf
 
     private val proxyDelegate = UndertowWsMessagesProxyDelegate(this)
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    private val permittedClassNames = setOf(
         "io/undertow/websockets/jsr/FrameHandler",
         "io/undertow/websockets/jsr/JsrWebSocketFilter",
         "io/undertow/websockets/jsr/WebSocketSessionRemoteEndpoint",
@@ -43,7 +44,12 @@ abstract class UndertowWsMessagesTransformerObject(agentConfiguration: AgentConf
         "io/undertow/websockets/core/WebSockets",
         "org/springframework/web/reactive/socket/adapter/UndertowWebSocketHandlerAdapter",
         "org/springframework/web/reactive/socket/adapter/UndertowWebSocketSession"
-    ).contains(className) || "io/undertow/websockets/client/WebSocketClientHandshake" == superName
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        permittedClassNames.contains(className) || "io/undertow/websockets/client/WebSocketClientHandshake" == superName
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames, superNames = setOf("io/undertow/websockets/client/WebSocketClientHandshake"))
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting UndertowWsMessagesTransformer for $className..." }
@@ -95,14 +101,14 @@ abstract class UndertowWsMessagesTransformerObject(agentConfiguration: AgentConf
             "invokeTextHandler",
             "(Lio/undertow/websockets/core/BufferedTextMessage;Lio/undertow/websockets/jsr/FrameHandler\$HandlerWrapper;Z)V"
         )
-            .also { it.insertCatching(CtBehavior::insertBefore, createProxyCode(textMessageProxyClass)) }
-            .also { it.insertCatching({ insertAfter(it, true) }, removeHeadersCode) }
+            .also { it.insertCatching(CtBehavior::insertBefore, createProxyCode(textMessageProxyClass), guarded = false) }
+            .also { it.insertCatching({ insertAfter(it, true) }, removeHeadersCode, guarded = false) }
         ctClass.getMethod(
             "invokeBinaryHandler",
             "(Lio/undertow/websockets/core/BufferedBinaryMessage;Lio/undertow/websockets/jsr/FrameHandler\$HandlerWrapper;Z)V"
         )
-            .also { it.insertCatching(CtBehavior::insertBefore, createProxyCode(binaryMessageProxyClass)) }
-            .also { it.insertCatching({ insertAfter(it, true) }, removeHeadersCode) }
+            .also { it.insertCatching(CtBehavior::insertBefore, createProxyCode(binaryMessageProxyClass), guarded = false) }
+            .also { it.insertCatching({ insertAfter(it, true) }, removeHeadersCode, guarded = false) }
     }
 
     private fun transformSpringWebSocketHandlerAdapter(ctClass: CtClass) {
@@ -127,14 +133,14 @@ abstract class UndertowWsMessagesTransformerObject(agentConfiguration: AgentConf
             "onFullTextMessage",
             "(Lio/undertow/websockets/core/WebSocketChannel;Lio/undertow/websockets/core/BufferedTextMessage;)V"
         )
-            .also { it.insertCatching(CtBehavior::insertBefore, createProxyCode(textMessageProxyClass)) }
-            .also { it.insertCatching({ insertAfter(it, true) }, removeHeadersCode) }
+            .also { it.insertCatching(CtBehavior::insertBefore, createProxyCode(textMessageProxyClass), guarded = false) }
+            .also { it.insertCatching({ insertAfter(it, true) }, removeHeadersCode, guarded = false) }
         ctClass.getMethod(
             "onFullBinaryMessage",
             "(Lio/undertow/websockets/core/WebSocketChannel;Lio/undertow/websockets/core/BufferedBinaryMessage;)V"
         )
-            .also { it.insertCatching(CtBehavior::insertBefore, createProxyCode(binaryMessageProxyClass)) }
-            .also { it.insertCatching({ insertAfter(it, true) }, removeHeadersCode) }
+            .also { it.insertCatching(CtBehavior::insertBefore, createProxyCode(binaryMessageProxyClass), guarded = false) }
+            .also { it.insertCatching({ insertAfter(it, true) }, removeHeadersCode, guarded = false) }
     }
 
     private fun transformClientHandshake(ctClass: CtClass) {
@@ -27,6 +27,7 @@ import com.epam.drill.agent.instrument.AbstractTransformerObject
 import com.epam.drill.agent.instrument.HeadersProcessor
 import com.epam.drill.agent.common.request.HeadersRetriever
 import com.epam.drill.agent.instrument.ws.AbstractWsTransformerObject
+import com.epam.drill.agent.instrument.PermitIndex
 
 /**
  * Transformer for Undertow-based websockets
@@ -42,12 +43,17 @@ abstract class UndertowWsServerTransformerObject(
     override val logger = KotlinLogging.logger {}
     private var openingSessionHeaders: ThreadLocal<Map<String, String>?> = ThreadLocal()
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    private val permittedClassNames = setOf(
         "io/undertow/websockets/jsr/UndertowSession",
         "io/undertow/websockets/jsr/EndpointSessionHandler",
         "io/undertow/websockets/jsr/FrameHandler",
         "org/springframework/web/reactive/socket/adapter/UndertowWebSocketHandlerAdapter"
-    ).contains(className)
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        permittedClassNames.contains(className)
+
+    override fun permitIndex() = PermitIndex(classNames = permittedClassNames)
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting UndertowWsServerTransformer for $className..." }
@@ -138,9 +144,9 @@ abstract class UndertowWsServerTransformerObject(
             }
             """.trimIndent()
         onTextMethod.insertCatching(CtBehavior::insertBefore, storeHeadersCode)
-        onTextMethod.insertCatching({ insertAfter(it, true) }, removeHeadersCode)
+        onTextMethod.insertCatching({ insertAfter(it, true) }, removeHeadersCode, guarded = false)
         onBinaryMethod.insertCatching(CtBehavior::insertBefore, storeHeadersCode)
-        onBinaryMethod.insertCatching({ insertAfter(it, true) }, removeHeadersCode)
+        onBinaryMethod.insertCatching({ insertAfter(it, true) }, removeHeadersCode, guarded = false)
     }
 
     private fun transformSpringWebSocketHandlerAdapter(ctClass: CtClass) {
@@ -165,9 +171,9 @@ abstract class UndertowWsServerTransformerObject(
             }
             """.trimIndent()
         onTextMethod.insertCatching(CtBehavior::insertBefore, storeHeadersCode)
-        onTextMethod.insertCatching({ insertAfter(it, true) }, removeHeadersCode)
+        onTextMethod.insertCatching({ insertAfter(it, true) }, removeHeadersCode, guarded = false)
         onBinaryMethod.insertCatching(CtBehavior::insertBefore, storeHeadersCode)
-        onBinaryMethod.insertCatching({ insertAfter(it, true) }, removeHeadersCode)
+        onBinaryMethod.insertCatching({ insertAfter(it, true) }, removeHeadersCode, guarded = false)
     }
 
 }
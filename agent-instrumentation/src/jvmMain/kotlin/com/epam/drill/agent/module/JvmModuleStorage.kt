@@ -15,16 +15,29 @@
  */
 package com.epam.drill.agent.module
 
+import java.util.concurrent.ConcurrentHashMap
 import com.epam.drill.agent.common.module.AgentModule
+import com.epam.drill.agent.common.request.RequestProcessor
 
 actual object JvmModuleStorage {
 
-    private val storage = mutableMapOf<String, AgentModule>()
+    private val storage = ConcurrentHashMap<String, AgentModule>()
+
+    /**
+     * Modules implementing [RequestProcessor], copied on each module registration.
+     */
+    @Volatile
+    var requestProcessors: Array<RequestProcessor> = emptyArray()
+        private set
 
     actual operator fun get(id: String) = storage.get(id)
 
     actual fun values(): Collection<AgentModule> = storage.values
 
-    actual fun add(module: AgentModule) = storage.put(module.id, module).let {}
+    @Synchronized
+    actual fun add(module: AgentModule) {
+        storage[module.id] = module
+        requestProcessors = storage.values.filterIsInstance<RequestProcessor>().toTypedArray()
+    }
 
 }
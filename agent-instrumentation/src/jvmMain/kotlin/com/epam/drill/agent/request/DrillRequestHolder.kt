@@ -24,30 +24,103 @@ import mu.KotlinLogging
 
 actual object DrillRequestHolder : RequestHolder {
     private val logger = KotlinLogging.logger {}
-    private var threadStorage: ThreadLocal<DrillRequest> = TransmittableThreadLocal.withInitial(DrillInitialContext::getDrillRequest)
+    private const val SESSION_ID = "drill-session-id"
+    private val notSampled = DrillRequest("")
+    private var threadStorage: ThreadLocal<DrillRequest> = object : TransmittableThreadLocal<DrillRequest>() {
+        override fun beforeExecute() = notifyContextChanged()
+        override fun afterExecute() = notifyContextChanged()
+    }
+
+    @Volatile
+    private var nativeCacheEnabled = false
+
+    @Volatile
+    private var initialRequest: DrillRequest? = null
+
+    /**
+     * Called by the native agent after registration of [contextChanged],
+     * so request changes of the current thread are reported to its native request cache.
+     */
+    fun enableNativeCache(enabled: Boolean) {
+        nativeCacheEnabled = enabled
+    }
 
     actual override fun remove() {
         val request = threadStorage.get()
         if (request == null) return
+        if (request === notSampled) {
+            threadStorage.remove()
+            notifyContextChanged()
+            return
+        }
         DrillRequestProcessor.processServerResponse()
         threadStorage.remove()
+        notifyContextChanged()
         logger.trace { "remove: Request ${request.drillSessionId} removed, threadId = ${Thread.currentThread().id}" }
     }
 
-    actual override fun retrieve(): DrillRequest? =
-        threadStorage.get()
+    /**
+     * Returns the drill request of the current thread, threads without a stored request get the initial drill context
+     * without a sampling decision, so it's made only at the start of server requests in [storeInitial].
+     */
+    actual override fun retrieve(): DrillRequest? {
+        val request = threadStorage.get() ?: return initialRequest()
+        return request.takeIf { it !== notSampled }
+    }
 
     actual override fun store(drillRequest: DrillRequest) {
         remove()
         threadStorage.set(drillRequest)
+        notifyContextChanged()
         DrillRequestProcessor.processServerRequest()
         logger.trace { "store: Request ${drillRequest.drillSessionId} saved, threadId = ${Thread.currentThread().id}" }
     }
 
+    /**
+     * Returns the not sampled marker as is, so swapping it back restores the sampling decision of the request.
+     */
+    override fun swap(drillRequest: DrillRequest?): DrillRequest? = threadStorage.get().also {
+        if (drillRequest != null) threadStorage.set(drillRequest) else threadStorage.remove()
+        notifyContextChanged()
+    }
+
+    /**
+     * Makes the sampling decision for a server request without drill session, the decision is kept
+     * for the current thread until the request is removed.
+     */
+    override fun storeInitial() {
+        val initial = initialRequest()
+        when {
+            initial == null -> remove()
+            PropagationPolicy.sampled() -> store(initial)
+            else -> {
+                remove()
+                threadStorage.set(notSampled)
+                notifyContextChanged()
+            }
+        }
+    }
+
     actual fun store(drillRequest: ByteArray) =
         store(ProtoBuf.decodeFromByteArray(DrillRequest.serializer(), drillRequest))
 
     actual fun dump(): ByteArray? =
         retrieve()?.let { ProtoBuf.encodeToByteArray(DrillRequest.serializer(), it) }
 
+    private fun notifyContextChanged() {
+        if (nativeCacheEnabled) contextChanged()
+    }
+
+    /**
+     * Implemented by the native agent, bumps the request generation of the current thread.
+     */
+    private external fun contextChanged()
+
+    private fun initialRequest(): DrillRequest? {
+        val sessionId = DrillInitialContext.get(SESSION_ID)
+        if (sessionId.isNullOrBlank()) return null
+        return initialRequest?.takeIf { it.drillSessionId == sessionId }
+            ?: DrillInitialContext.getDrillRequest()?.also { initialRequest = it }
+    }
+
 }
\ No newline at end of file
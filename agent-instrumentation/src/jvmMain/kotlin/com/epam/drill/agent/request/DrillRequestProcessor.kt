@@ -21,12 +21,10 @@ import com.epam.drill.agent.common.request.RequestProcessor
 object DrillRequestProcessor : RequestProcessor {
 
     override fun processServerRequest() {
-        module().forEach { it.processServerRequest() }
+        for (processor in JvmModuleStorage.requestProcessors) processor.processServerRequest()
     }
 
     override fun processServerResponse() {
-        module().forEach { it.processServerResponse() }
+        for (processor in JvmModuleStorage.requestProcessors) processor.processServerResponse()
     }
-
-    private fun module() = JvmModuleStorage.values().filterIsInstance<RequestProcessor>()
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.request
+
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import com.epam.drill.agent.common.configuration.AgentParameters
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.CONTEXT_PROPAGATION_RATE_LIMIT
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.CONTEXT_PROPAGATION_SAMPLING_PERCENT
+
+/**
+ * Policy of context propagation for requests without drill session headers.
+ *
+ * Requests carrying drill session headers are always processed. Other requests get the initial drill context
+ * only if they are sampled with the configured percentage and the configured rate limit isn't exceeded.
+ * Not sampled requests have no drill context, so downstream hooks skip them.
+ */
+object PropagationPolicy {
+
+    private val nanosPerSecond = TimeUnit.SECONDS.toNanos(1)
+
+    @Volatile
+    private var samplingPercent = 100
+
+    @Volatile
+    private var nanosPerPermit = 0L
+
+    private val nextPermitNanos = AtomicLong(System.nanoTime())
+
+    fun configure(parameters: AgentParameters) {
+        samplingPercent = parameters[CONTEXT_PROPAGATION_SAMPLING_PERCENT]
+        nanosPerPermit = parameters[CONTEXT_PROPAGATION_RATE_LIMIT].takeIf { it > 0 }?.let { nanosPerSecond / it } ?: 0L
+    }
+
+    fun sampled(): Boolean {
+        val percent = samplingPercent
+        if (percent < 100 && ThreadLocalRandom.current().nextInt(100) >= percent) return false
+        return nanosPerPermit == 0L || acquirePermit()
+    }
+
+    /**
+     * Token bucket in the form of generic cell rate algorithm, bursts up to the rate limit per second are allowed.
+     */
+    private fun acquirePermit(): Boolean {
+        val now = System.nanoTime()
+        while (true) {
+            val next = nextPermitNanos.get()
+            val start = maxOf(next, now - nanosPerSecond)
+            if (start > now) return false
+            if (nextPermitNanos.compareAndSet(next, start + nanosPerPermit)) return true
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class CookieScannerTest {
+
+    private val headers = listOf(
+        "_ga=GA1.2.1234567890.1700000000; _gid=GA1.2.987654321.1700000000; csrftoken=abc123; " +
+                "JSESSIONID=0123456789ABCDEF; drill-session-id=session-1; drill-test-name=test=1; theme=dark",
+        " drill-session-id = spaced ;drill-session-id=last;;flag; =empty; drill-x=",
+        "JSESSIONID=0123456789ABCDEF; theme=dark",
+        ""
+    )
+
+    @Test
+    fun `find returns the same session id as split based parsing`() {
+        headers.forEach { assertEquals(parseBySplit(it)["drill-session-id"], CookieScanner.find(it, "drill-session-id")) }
+    }
+
+    @Test
+    fun `collect returns the same drill cookies as split based parsing`() {
+        headers.forEach { header ->
+            assertEquals(
+                parseBySplit(header).filterKeys { it.startsWith(HeadersProcessor.DRILL_HEADER_PREFIX) },
+                CookieScanner.collect(header, HeadersProcessor.DRILL_HEADER_PREFIX, HashMap())
+            )
+        }
+    }
+
+    @Test
+    fun `find returns null for cookie name prefix`() {
+        assertNull(CookieScanner.find("drill-session-id-other=1; drill-session=2", "drill-session-id"))
+    }
+
+    private fun parseBySplit(header: String) = header
+        .split(";")
+        .mapNotNull {
+            val parts = it.trim().split("=", limit = 2)
+            if (parts.size == 2) parts[0] to parts[1] else null
+        }
+        .toMap()
+
+}
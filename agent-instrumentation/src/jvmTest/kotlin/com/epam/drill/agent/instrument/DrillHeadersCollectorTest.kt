@@ -0,0 +1,51 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class DrillHeadersCollectorTest {
+
+    private val sessionHeader = "drill-session-id"
+
+    @Test
+    fun `drill headers, session header and cookies are collected`() {
+        assertTrue(DrillHeadersCollector.isCollected("Drill-Test-Name", sessionHeader))
+        assertTrue(DrillHeadersCollector.isCollected("DRILL-SESSION-ID", sessionHeader))
+        assertTrue(DrillHeadersCollector.isCollected("cookie", sessionHeader))
+        assertFalse(DrillHeadersCollector.isCollected("Content-Type", sessionHeader))
+        assertFalse(DrillHeadersCollector.isCollected(null, sessionHeader))
+    }
+
+    @Test
+    fun `cookies without drill values and missing values aren't collected`() {
+        assertNull(DrillHeadersCollector.collect(null, "Cookie", "JSESSIONID=1"))
+        assertNull(DrillHeadersCollector.collect(null, "drill-test-name", null))
+    }
+
+    @Test
+    fun `headers left by a failed hook are cleared`() {
+        DrillHeadersCollector.collect(null, "drill-test-name", "test-1")
+        val headers = DrillHeadersCollector.collect(null, sessionHeader, "session-1")
+        assertEquals(mapOf(sessionHeader to "session-1"), headers)
+        headers?.clear()
+    }
+
+}
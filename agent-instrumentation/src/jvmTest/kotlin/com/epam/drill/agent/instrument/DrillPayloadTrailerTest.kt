@@ -0,0 +1,98 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.nio.ByteBuffer
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.PooledByteBufAllocator
+import io.netty.buffer.Unpooled
+import io.netty.util.ResourceLeakDetector
+
+class DrillPayloadTrailerTest {
+
+    private val headers = mapOf("drill-session-id" to "session-1", "drill-test-name" to "test=1")
+    private val allocator = PooledByteBufAllocator(true)
+    private lateinit var leakDetectionLevel: ResourceLeakDetector.Level
+
+    @BeforeTest
+    fun setLeakDetectionLevel() {
+        leakDetectionLevel = ResourceLeakDetector.getLevel()
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID)
+    }
+
+    @AfterTest
+    fun restoreLeakDetectionLevel() = ResourceLeakDetector.setLevel(leakDetectionLevel)
+
+    @Test
+    fun `indexOf returns -1 for messages without trailer`() {
+        listOf("", "message", "message${PayloadProcessor.PAYLOAD_PREFIX}", "message${PayloadProcessor.PAYLOAD_SUFFIX}")
+            .forEach { assertEquals(-1, DrillPayloadTrailer.indexOf(ByteBuffer.wrap(it.encodeToByteArray()))) }
+    }
+
+    @Test
+    fun `indexOf and headers read trailer of direct buffer in place`() {
+        val buffer = directBuffer("message" + DrillPayloadTrailer.trailer(headers))
+        try {
+            val message = buffer.nioBuffer()
+            val index = DrillPayloadTrailer.indexOf(message)
+            assertEquals(message.position() + "message".length, index)
+            assertEquals(headers, DrillPayloadTrailer.headers(message, index))
+        } finally {
+            assertEquals(true, buffer.release())
+        }
+    }
+
+    @Test
+    fun `empty trailer is found and has no headers`() {
+        val message = ByteBuffer.wrap(("message" + DrillPayloadTrailer.trailer(null)).encodeToByteArray())
+        val index = DrillPayloadTrailer.indexOf(message)
+        assertEquals("message".length, index)
+        assertEquals(emptyMap(), DrillPayloadTrailer.headers(message, index))
+    }
+
+    @Test
+    fun `trailer is stripped from buffer by writer index`() {
+        val buffer = directBuffer("--message" + DrillPayloadTrailer.trailer(headers)).skipBytes(2)
+        val message = buffer.nioBuffer()
+        val offset = DrillPayloadTrailer.indexOf(message) - message.position()
+        buffer.writerIndex(buffer.readerIndex() + offset)
+        assertEquals("message", buffer.toString(Charsets.UTF_8))
+        assertEquals(1, buffer.refCnt())
+        assertEquals(true, buffer.release())
+        assertEquals(0, buffer.refCnt())
+    }
+
+    @Test
+    fun `trailer is appended to buffer as composite component`() {
+        val content = directBuffer("message")
+        val trailer = Unpooled.wrappedBuffer(DrillPayloadTrailer.trailer(headers).encodeToByteArray())
+        val buffer = Unpooled.wrappedBuffer(content, trailer)
+        val message = buffer.nioBuffer()
+        assertEquals(headers, DrillPayloadTrailer.headers(message, DrillPayloadTrailer.indexOf(message)))
+        assertEquals(1, content.refCnt())
+        assertEquals(true, buffer.release())
+        assertEquals(0, content.refCnt())
+        assertEquals(0, trailer.refCnt())
+    }
+
+    private fun directBuffer(message: String): ByteBuf =
+        allocator.directBuffer().writeBytes(message.encodeToByteArray())
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+
+class DrillRequestInternerTest {
+
+    private val sessionHeader = "drill-session-id"
+
+    @Test
+    fun `equal drill headers share the interned request`() {
+        val first = DrillRequestInterner.intern("session-1", linkedMapOf("drill-a" to "1", "drill-b" to "2", "Host" to "localhost"), sessionHeader)
+        val second = DrillRequestInterner.intern("session-1", linkedMapOf("drill-b" to "2", "Accept" to "*/*", "drill-a" to "1"), sessionHeader)
+        assertSame(first, second)
+        assertEquals(mapOf("drill-a" to "1", "drill-b" to "2", sessionHeader to "session-1"), first.headers)
+    }
+
+    @Test
+    fun `different session ids and drill headers aren't shared`() {
+        val request = DrillRequestInterner.intern("session-1", mapOf("drill-a" to "1"), sessionHeader)
+        assertNotSame(request, DrillRequestInterner.intern("session-2", mapOf("drill-a" to "1"), sessionHeader))
+        assertNotSame(request, DrillRequestInterner.intern("session-1", mapOf("drill-a" to "2"), sessionHeader))
+        assertNotSame(request, DrillRequestInterner.intern("session-1", mapOf("drill-a" to "1", "drill-b" to "2"), sessionHeader))
+    }
+
+    @Test
+    fun `new requests are interned after many distinct requests`() {
+        repeat(10_000) { DrillRequestInterner.intern("session-$it", mapOf("drill-test-name" to "test-$it"), sessionHeader) }
+        val request = DrillRequestInterner.intern("session-new", mapOf("drill-test-name" to "test-new"), sessionHeader)
+        assertSame(request, DrillRequestInterner.intern("session-new", mapOf("drill-test-name" to "test-new"), sessionHeader))
+    }
+
+}
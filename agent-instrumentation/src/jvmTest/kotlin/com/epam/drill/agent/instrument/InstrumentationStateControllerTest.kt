@@ -0,0 +1,147 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.util.concurrent.Executors
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import javassist.CtClass
+import mu.KotlinLogging
+import com.epam.drill.agent.common.configuration.AgentParameterDefinition
+
+class InstrumentationStateControllerTest {
+
+    private val executor = Executors.newSingleThreadExecutor()
+
+    @AfterTest
+    fun shutdownExecutor() {
+        executor.shutdown()
+    }
+
+    @Test
+    fun `accepted change is published and affected classes are retransformed`() {
+        val feature = feature("accepted")
+        val affected = TestTransformer(feature, "java/lang/String")
+        val unaffected = TestTransformer(feature("unaffected"), "java/lang/Integer")
+        val retransformer = TestRetransformer(String::class.java, Integer::class.java)
+        InstrumentationStateController.initialize(listOf(affected, unaffected), retransformer)
+
+        assertTrue(InstrumentationStateController.setEnabled(feature, false))
+
+        assertEquals(false, InstrumentationStateController[feature])
+        assertFalse(affected.enabled())
+        assertTrue(unaffected.enabled())
+        assertEquals(listOf<Class<*>>(String::class.java), retransformer.retransformed)
+    }
+
+    @Test
+    fun `rejected change is never visible to other threads`() {
+        val feature = feature("rejected")
+        val seenByOtherThread = mutableListOf<Boolean?>()
+        val transformer = TestTransformer(feature, "java/lang/String", retransformable = false) {
+            seenByOtherThread.add(executor.submit<Boolean?> { InstrumentationStateController[feature] }.get())
+        }
+        val retransformer = TestRetransformer(String::class.java)
+        InstrumentationStateController.initialize(listOf(transformer), retransformer)
+
+        assertFalse(InstrumentationStateController.setEnabled(feature, false))
+
+        assertNull(InstrumentationStateController[feature])
+        assertTrue(transformer.enabled())
+        assertTrue(seenByOtherThread.all { it == null })
+        assertTrue(retransformer.retransformed.isEmpty())
+    }
+
+    @Test
+    fun `rejected change keeps the previous override`() {
+        val feature = feature("previous")
+        val retransformable = TestTransformer(feature, "java/lang/String")
+        val retransformer = TestRetransformer(String::class.java, Integer::class.java)
+        InstrumentationStateController.initialize(listOf(retransformable), retransformer)
+        assertTrue(InstrumentationStateController.setEnabled(feature, false))
+        retransformer.retransformed.clear()
+
+        val notRetransformable = TestTransformer(feature, "java/lang/Integer", retransformable = false)
+        InstrumentationStateController.initialize(listOf(retransformable, notRetransformable), retransformer)
+
+        assertFalse(InstrumentationStateController.setEnabled(feature, true))
+        assertEquals(false, InstrumentationStateController[feature])
+        assertTrue(retransformer.retransformed.isEmpty())
+    }
+
+    @Test
+    fun `only modifiable classes permitted by affected transformers are retransformed`() {
+        val feature = feature("classes")
+        val transformer = TestTransformer(feature, "java/lang/String", "java/lang/Long", "java/lang/Short")
+        val retransformer = TestRetransformer(
+            String::class.java, Integer::class.java, Long::class.javaObjectType, Short::class.javaObjectType,
+            Array<String>::class.java, Int::class.javaPrimitiveType!!,
+            unmodifiable = setOf(Short::class.javaObjectType)
+        )
+        InstrumentationStateController.initialize(listOf(transformer), retransformer)
+
+        assertTrue(InstrumentationStateController.setEnabled(feature, false))
+
+        assertEquals(listOf(String::class.java, Long::class.javaObjectType), retransformer.retransformed)
+    }
+
+    @Test
+    fun `unchanged value doesn't retransform classes`() {
+        val feature = feature("unchanged")
+        val retransformer = TestRetransformer(String::class.java)
+        InstrumentationStateController.initialize(listOf(TestTransformer(feature, "java/lang/String")), retransformer)
+
+        assertTrue(InstrumentationStateController.setEnabled(feature, true))
+
+        assertTrue(retransformer.retransformed.isEmpty())
+    }
+
+    private fun feature(name: String) = AgentParameterDefinition.forBoolean(
+        name = "instrumentationStateControllerTest.$name",
+        defaultValue = true
+    )
+
+    private class TestTransformer(
+        private val feature: AgentParameterDefinition<Boolean>,
+        private vararg val classNames: String,
+        private val retransformable: Boolean = true,
+        private val onEnabled: () -> Unit = {}
+    ) : AbstractTransformerObject(TestAgentConfiguration()) {
+        override val logger = KotlinLogging.logger {}
+        override fun enabled() = featureEnabled(feature).also { onEnabled() }
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) = className in classNames
+        override fun retransformable() = retransformable
+        override fun transform(className: String, ctClass: CtClass) = Unit
+        override fun getClassPath() = ""
+    }
+
+    private class TestRetransformer(
+        private vararg val classes: Class<*>,
+        private val unmodifiable: Set<Class<*>> = emptySet()
+    ) : ClassRetransformer {
+        val retransformed = mutableListOf<Class<*>>()
+        override fun loadedClasses(): Array<Class<*>> = arrayOf(*classes)
+        override fun isModifiable(clazz: Class<*>) = clazz !in unmodifiable
+        override fun retransform(classes: Array<Class<*>>) {
+            retransformed.addAll(classes)
+        }
+    }
+
+}
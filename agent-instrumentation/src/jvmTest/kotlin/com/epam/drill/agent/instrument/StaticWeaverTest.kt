@@ -0,0 +1,162 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.io.File
+import java.nio.file.Files
+import java.security.CodeSource
+import java.security.ProtectionDomain
+import java.security.cert.Certificate
+import java.util.jar.JarEntry
+import java.util.jar.JarFile
+import java.util.jar.JarOutputStream
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+import mu.KotlinLogging
+
+class StaticWeaverTest {
+
+    private val directory = Files.createTempDirectory("static-weaver").toFile()
+    private val input = File(directory, "input.jar")
+    private val output = File(directory, "output.jar")
+    private val wovenName = WovenSample::class.java.name.replace('.', '/')
+    private val otherName = OtherSample::class.java.name.replace('.', '/')
+    private val wovenBytes = classBytes(wovenName)
+
+    @AfterTest
+    fun cleanup() {
+        directory.deleteRecursively()
+        TestWeavingTransformer.fingerprint = FINGERPRINT
+    }
+
+    @Test
+    fun `woven class is stored with its original bytes and skipped by dispatcher`() {
+        val manifest = weave()
+
+        assertEquals(mapOf(wovenName to setOf(TestWeavingTransformer::class.java.name)), manifest.classes)
+        assertEquals(mapOf(TestWeavingTransformer::class.java.name to FINGERPRINT), manifest.fingerprints)
+        JarFile(output).use { jar ->
+            assertContentEquals(wovenBytes + MARKER, jar.read("$wovenName.class"))
+            assertContentEquals(wovenBytes, jar.read("${WovenManifest.ORIGINAL_PREFIX}$wovenName.class"))
+        }
+        val loaded = WovenClasses[protectionDomain(output)]
+        assertTrue(loaded.isWoven(wovenName, TestWeavingTransformer::class.java.name))
+        assertContentEquals(wovenBytes, loaded.original(wovenName))
+        assertTrue(dispatcher().permitted(wovenName, null, emptyArray(), protectionDomain(output)).isEmpty())
+    }
+
+    @Test
+    fun `not woven class is dispatched as usual`() {
+        weave()
+
+        JarFile(output).use { jar ->
+            assertContentEquals(classBytes(otherName), jar.read("$otherName.class"))
+            assertNull(jar.getJarEntry("${WovenManifest.ORIGINAL_PREFIX}$otherName.class"))
+        }
+        assertFalse(WovenClasses[protectionDomain(output)].isWoven(otherName))
+        val permitted = dispatcher(OtherTransformer).permitted(otherName, null, emptyArray(), protectionDomain(output))
+        assertEquals(listOf<TransformerObject>(OtherTransformer), permitted)
+        assertTrue(WovenClasses[null].classes.isEmpty())
+    }
+
+    @Test
+    fun `class woven with different parameters is instrumented from original bytes`() {
+        weave()
+        TestWeavingTransformer.fingerprint = "changed"
+
+        val permitted = dispatcher().permitted(wovenName, null, emptyArray(), protectionDomain(output))
+
+        assertEquals(2, permitted.size)
+        assertSame(TestWeavingTransformer, permitted[1])
+        val woven = JarFile(output).use { it.read("$wovenName.class") }
+        val transformed = permitted.fold(woven) { bytes, transformer -> transformer.transform(wovenName, bytes, null, null) ?: bytes }
+        assertContentEquals(wovenBytes + MARKER, transformed)
+    }
+
+    @Test
+    fun `class woven with different parameters without original bytes is refused`() {
+        weave()
+        val stripped = File(directory, "stripped.jar")
+        JarFile(output).use { jar ->
+            JarOutputStream(stripped.outputStream()).use { out ->
+                jar.entries().asSequence().filterNot { it.name.startsWith(WovenManifest.ORIGINAL_PREFIX) }.forEach {
+                    out.putNextEntry(JarEntry(it.name))
+                    out.write(jar.read(it.name))
+                    out.closeEntry()
+                }
+            }
+        }
+        TestWeavingTransformer.fingerprint = "changed"
+
+        assertFailsWith<IllegalStateException> {
+            dispatcher().permitted(wovenName, null, emptyArray(), protectionDomain(stripped))
+        }
+    }
+
+    private fun weave(): WovenManifest {
+        JarOutputStream(input.outputStream()).use { out ->
+            listOf(wovenName, otherName).forEach {
+                out.putNextEntry(JarEntry("$it.class"))
+                out.write(classBytes(it))
+                out.closeEntry()
+            }
+        }
+        return StaticWeaver(listOf(TestWeavingTransformer)).weave(input, output)
+    }
+
+    private fun dispatcher(vararg others: TransformerObject) = TransformerDispatcher(listOf<TransformerObject>(TestWeavingTransformer, *others))
+
+    private fun protectionDomain(jar: File) =
+        ProtectionDomain(CodeSource(jar.toURI().toURL(), null as Array<Certificate>?), null)
+
+    private fun classBytes(name: String) = javaClass.classLoader.getResourceAsStream("$name.class")!!.use { it.readBytes() }
+
+    private fun JarFile.read(name: String) = getInputStream(getJarEntry(name)).use { it.readBytes() }
+
+    private class WovenSample
+
+    private class OtherSample
+
+    private object TestWeavingTransformer : AbstractBytecodeTransformerObject(TestAgentConfiguration()) {
+        override val logger = KotlinLogging.logger {}
+        var fingerprint = FINGERPRINT
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+            className.endsWith("\$WovenSample")
+        override fun instrument(className: String, classFileBuffer: ByteArray, loader: Any?, protectionDomain: Any?) =
+            Instrumented(classFileBuffer + MARKER)
+        override fun cacheFingerprint() = fingerprint
+        override fun getClassPath() = ""
+    }
+
+    private object OtherTransformer : TransformerObject {
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) = true
+        override fun transform(className: String, classFileBuffer: ByteArray, loader: Any?, protectionDomain: Any?) =
+            classFileBuffer
+    }
+
+    private companion object {
+        const val FINGERPRINT = "fingerprint"
+        val MARKER = byteArrayOf(0x7f)
+    }
+
+}
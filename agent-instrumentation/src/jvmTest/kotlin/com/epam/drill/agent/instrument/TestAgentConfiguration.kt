@@ -0,0 +1,42 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import kotlin.reflect.KProperty
+import com.epam.drill.agent.common.configuration.AgentConfiguration
+import com.epam.drill.agent.common.configuration.AgentMetadata
+import com.epam.drill.agent.common.configuration.AgentParameterDefinition
+import com.epam.drill.agent.common.configuration.AgentParameters
+import com.epam.drill.agent.common.configuration.BaseAgentParameterDefinition
+import com.epam.drill.agent.common.configuration.NullableAgentParameterDefinition
+import com.epam.drill.agent.common.configuration.ValidationError
+
+/**
+ * Agent configuration for tests, parameters without [values] have default values.
+ */
+class TestAgentConfiguration(private val values: Map<String, Any> = emptyMap()) : AgentConfiguration {
+    override val agentMetadata: AgentMetadata
+        get() = throw NotImplementedError()
+    override val parameters = object : AgentParameters {
+        @Suppress("UNCHECKED_CAST")
+        override fun <T : Any> get(name: String): T? = values[name] as T?
+        override fun <T : Any> get(definition: AgentParameterDefinition<T>): T =
+            get<T>(definition.name) ?: definition.defaultValue!!
+        override fun <T : Any> getValue(ref: Any?, property: KProperty<*>): T? = get(property.name)
+        override fun <T : Any> get(definition: NullableAgentParameterDefinition<T>): T? = get(definition.name)
+        override fun define(vararg definitions: BaseAgentParameterDefinition<*>): List<ValidationError<*>> = emptyList()
+    }
+}
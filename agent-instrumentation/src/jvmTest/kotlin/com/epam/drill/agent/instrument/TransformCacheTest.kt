@@ -0,0 +1,113 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.io.File
+import java.nio.file.Files
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertNotEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import mu.KotlinLogging
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.INSTRUMENTATION_TRANSFORM_CACHE_DIR
+
+class TransformCacheTest {
+
+    private val directory = Files.createTempDirectory("transform-cache").toFile()
+    private val cache = TransformCache(directory, "agent-1")
+    private val classBytes = byteArrayOf(1, 2, 3)
+    private val transformedBytes = byteArrayOf(1, 2, 3, 4)
+
+    @AfterTest
+    fun cleanup() {
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun `stored entry is returned`() {
+        val key = cache.key(classBytes, "transformer", "fingerprint")
+        cache[key] = transformedBytes
+        assertContentEquals(transformedBytes, cache[key])
+        assertContentEquals(transformedBytes, TransformCache(directory, "agent-1")[key])
+    }
+
+    @Test
+    fun `missing entry isn't returned`() {
+        assertNull(cache[cache.key(classBytes, "transformer", "fingerprint")])
+        cache[cache.key(classBytes, "transformer", "fingerprint")] = transformedBytes
+        assertNull(TransformCache(directory, "agent-2")[cache.key(classBytes, "transformer", "fingerprint")])
+    }
+
+    @Test
+    fun `corrupted entry is removed`() {
+        val key = cache.key(classBytes, "transformer", "fingerprint")
+        cache[key] = transformedBytes
+        val entry = entries().single()
+        entry.writeBytes(entry.readBytes().also { it[it.lastIndex]++ })
+        assertNull(cache[key])
+        assertTrue(entries().isEmpty())
+    }
+
+    @Test
+    fun `key depends on class bytes, transformer and fingerprint`() {
+        val key = cache.key(classBytes, "transformer", "fingerprint")
+        assertEquals(key, cache.key(classBytes.copyOf(), "transformer", "fingerprint"))
+        assertNotEquals(key, cache.key(transformedBytes, "transformer", "fingerprint"))
+        assertNotEquals(key, cache.key(classBytes, "transformer2", "fingerprint"))
+        assertNotEquals(key, cache.key(classBytes, "transformer", "fingerprint2"))
+        assertNotEquals(cache.key(classBytes, "transformer", "1;2"), cache.key(classBytes, "transformer;1", "2"))
+    }
+
+    @Test
+    fun `successful transformation is stored`() {
+        val transformer = newTransformer(failed = false)
+        assertContentEquals(transformedBytes, transformer.transform("Test", classBytes, null, null))
+        assertContentEquals(transformedBytes, transformer.transform("Test", classBytes, null, null))
+        assertEquals(1, transformer.instrumented)
+        assertEquals(1, entries().size)
+    }
+
+    @Test
+    fun `failed transformation isn't stored`() {
+        val transformer = newTransformer(failed = true)
+        assertContentEquals(transformedBytes, transformer.transform("Test", classBytes, null, null))
+        assertContentEquals(transformedBytes, transformer.transform("Test", classBytes, null, null))
+        assertEquals(2, transformer.instrumented)
+        assertTrue(entries().isEmpty())
+    }
+
+    private fun entries() = directory.walk().filter(File::isFile).toList()
+
+    private fun newTransformer(failed: Boolean) = TestCachedTransformer(directory, transformedBytes, failed)
+
+    private class TestCachedTransformer(
+        directory: File,
+        private val transformedBytes: ByteArray,
+        private val failed: Boolean
+    ) : AbstractBytecodeTransformerObject(TestAgentConfiguration(mapOf(INSTRUMENTATION_TRANSFORM_CACHE_DIR.name to directory.path))) {
+        override val logger = KotlinLogging.logger {}
+        var instrumented = 0
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) = true
+        override fun instrument(className: String, classFileBuffer: ByteArray, loader: Any?, protectionDomain: Any?) =
+            Instrumented(transformedBytes, failed).also { instrumented++ }
+        override fun cacheFingerprint() = "fingerprint"
+        override fun getClassPath() = ""
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class TransformerDispatcherTest {
+
+    private val byClassName = TestTransformer(PermitIndex(classNames = setOf(TARGET)))
+    private val bySuperName = TestTransformer(PermitIndex(superNames = setOf(BASE)))
+    private val byInterface = TestTransformer(PermitIndex(interfaces = setOf(API)))
+    private val dispatcher = TransformerDispatcher(listOf(byClassName, bySuperName, byInterface))
+
+    @Test
+    fun `transformer is matched by class name index`() {
+        assertEquals(listOf<TransformerObject>(byClassName), dispatcher.permitted(TARGET, OBJECT, emptyArray()))
+        assertEquals(1, byClassName.permitCalls)
+        assertEquals(0, bySuperName.permitCalls)
+        assertEquals(0, byInterface.permitCalls)
+    }
+
+    @Test
+    fun `transformer is matched by superclass index`() {
+        assertEquals(listOf<TransformerObject>(bySuperName), dispatcher.permitted(OTHER, BASE, emptyArray()))
+        assertEquals(0, byClassName.permitCalls)
+        assertEquals(1, bySuperName.permitCalls)
+    }
+
+    @Test
+    fun `transformer is matched by interface index`() {
+        assertEquals(listOf<TransformerObject>(byInterface), dispatcher.permitted(OTHER, OBJECT, arrayOf(null, API)))
+        assertEquals(0, byClassName.permitCalls)
+        assertEquals(1, byInterface.permitCalls)
+    }
+
+    @Test
+    fun `transformer without index is matched by fallback`() {
+        val fallback = TestTransformer(null) { it == OTHER }
+        val dispatcher = TransformerDispatcher(listOf(byClassName, fallback))
+
+        assertEquals(listOf<TransformerObject>(fallback), dispatcher.permitted(OTHER, OBJECT, emptyArray()))
+        assertTrue(dispatcher.permitted(UNRELATED, OBJECT, emptyArray()).isEmpty())
+        assertEquals(2, fallback.permitCalls)
+        assertEquals(0, byClassName.permitCalls)
+    }
+
+    @Test
+    fun `class not wanted by any transformer is not permitted`() {
+        assertTrue(dispatcher.permitted(UNRELATED, OBJECT, arrayOf(SERIALIZABLE)).isEmpty())
+        assertTrue(dispatcher.permitted(UNRELATED, null, emptyArray()).isEmpty())
+        assertEquals(0, byClassName.permitCalls + bySuperName.permitCalls + byInterface.permitCalls)
+    }
+
+    @Test
+    fun `indexed transformer rejecting the class is not permitted`() {
+        val rejecting = TestTransformer(PermitIndex(classNames = setOf(TARGET))) { false }
+
+        assertTrue(TransformerDispatcher(listOf(rejecting)).permitted(TARGET, OBJECT, emptyArray()).isEmpty())
+        assertEquals(1, rejecting.permitCalls)
+    }
+
+    @Test
+    fun `transformer matched by several indexes is returned once`() {
+        val everywhere = TestTransformer(PermitIndex(setOf(TARGET), setOf(BASE), setOf(API, SERIALIZABLE)))
+        val dispatcher = TransformerDispatcher(listOf(everywhere, byInterface))
+
+        val permitted = dispatcher.permitted(TARGET, BASE, arrayOf(API, SERIALIZABLE))
+
+        assertEquals(listOf(everywhere, byInterface), permitted)
+        assertEquals(1, everywhere.permitCalls)
+        assertEquals(1, byInterface.permitCalls)
+    }
+
+    private class TestTransformer(
+        private val index: PermitIndex?,
+        private val permits: (String) -> Boolean = { true }
+    ) : TransformerObject {
+        var permitCalls = 0
+        override fun permitIndex() = index
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean {
+            permitCalls++
+            return permits(className)
+        }
+        override fun transform(className: String, classFileBuffer: ByteArray, loader: Any?, protectionDomain: Any?) =
+            classFileBuffer
+    }
+
+    private companion object {
+        const val TARGET = "com/example/Target"
+        const val OTHER = "com/example/Other"
+        const val UNRELATED = "com/example/Unrelated"
+        const val BASE = "com/example/Base"
+        const val API = "com/example/Api"
+        const val OBJECT = "java/lang/Object"
+        const val SERIALIZABLE = "java/io/Serializable"
+    }
+
+}
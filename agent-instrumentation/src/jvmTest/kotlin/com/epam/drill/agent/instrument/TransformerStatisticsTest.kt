@@ -0,0 +1,137 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.util.concurrent.TimeUnit
+import javassist.CtClass
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+import mu.KotlinLogging
+
+class TransformerStatisticsTest {
+
+    private val sampleName = Sample::class.java.name.replace('.', '/')
+    private val sampleBytes = javaClass.classLoader.getResourceAsStream("$sampleName.class")!!.use { it.readBytes() }
+
+    @Test
+    fun `permit checks are recorded by dispatcher`() {
+        val statistics = TransformerStatisticsStorage[PermitTransformer]
+        val checks = statistics.permitChecks
+
+        val dispatcher = TransformerDispatcher(listOf(PermitTransformer))
+        dispatcher.permitted(sampleName, null, emptyArray())
+        dispatcher.permitted(sampleName, null, emptyArray())
+
+        assertEquals(checks + 2, statistics.permitChecks)
+    }
+
+    @Test
+    fun `transforms and added bytes are recorded`() {
+        val statistics = TransformerStatisticsStorage[GrowingTransformer]
+        val transforms = statistics.transforms
+        val bytesAdded = statistics.bytesAdded
+
+        GrowingTransformer.transform(sampleName, sampleBytes, null, null)
+        GrowingTransformer.transform(sampleName, sampleBytes, null, null)
+
+        assertEquals(transforms + 2, statistics.transforms)
+        assertEquals(bytesAdded + 2 * GROWTH.size, statistics.bytesAdded)
+        assertEquals(0L, statistics.failures)
+    }
+
+    @Test
+    fun `failures are recorded with transforms`() {
+        val statistics = TransformerStatisticsStorage[FailingTransformer]
+        val transforms = statistics.transforms
+        val failures = statistics.failures
+
+        FailingTransformer.transform(sampleName, sampleBytes, javaClass.classLoader, null)
+
+        assertEquals(transforms + 1, statistics.transforms)
+        assertEquals(failures + 1, statistics.failures)
+    }
+
+    @Test
+    fun `recorded time is accumulated`() {
+        val statistics = TransformerStatistics("test")
+
+        statistics.recordPermit(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(2))
+        statistics.recordPermit(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(3))
+        statistics.recordTransform(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(4), -1)
+
+        assertEquals(2L, statistics.permitChecks)
+        assertTrue(statistics.permitTimeMillis >= 5)
+        assertEquals(1L, statistics.transforms)
+        assertTrue(statistics.transformTimeMillis >= 4)
+        assertEquals(-1L, statistics.bytesAdded)
+    }
+
+    @Test
+    fun `statistics are stored by transformer class and listed as a snapshot`() {
+        val statistics = TransformerStatisticsStorage[SnapshotTransformer(1)]
+        val all = TransformerStatisticsStorage.all()
+
+        assertSame(statistics, TransformerStatisticsStorage[SnapshotTransformer(2)])
+        assertNotSame(statistics, TransformerStatisticsStorage[PermitTransformer])
+        assertTrue(statistics in all)
+        assertEquals(all.sortedBy(TransformerStatistics::transformerName), all)
+        assertEquals(SnapshotTransformer::class.java.name, statistics.transformerName)
+
+        val later = TransformerStatisticsStorage[LaterTransformer]
+        assertFalse(later in all)
+        assertTrue(later in TransformerStatisticsStorage.all())
+    }
+
+    private class Sample
+
+    private object PermitTransformer : TestTransformer()
+
+    private object LaterTransformer : TestTransformer()
+
+    private class SnapshotTransformer(@Suppress("unused") val id: Int) : TestTransformer()
+
+    private abstract class TestTransformer : TransformerObject {
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) = true
+        override fun transform(className: String, classFileBuffer: ByteArray, loader: Any?, protectionDomain: Any?) =
+            classFileBuffer
+    }
+
+    private object GrowingTransformer : AbstractBytecodeTransformerObject(TestAgentConfiguration()) {
+        override val logger = KotlinLogging.logger {}
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) = true
+        override fun instrument(className: String, classFileBuffer: ByteArray, loader: Any?, protectionDomain: Any?) =
+            Instrumented(classFileBuffer + GROWTH)
+        override fun getClassPath() = ""
+    }
+
+    private object FailingTransformer : AbstractTransformerObject(TestAgentConfiguration()) {
+        override val logger = KotlinLogging.logger {}
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) = true
+        override fun transform(className: String, ctClass: CtClass) {
+            throw IllegalStateException("failure")
+        }
+        override fun getClassPath(): String = System.getProperty("java.class.path")
+    }
+
+    private companion object {
+        val GROWTH = byteArrayOf(1, 2, 3)
+    }
+
+}
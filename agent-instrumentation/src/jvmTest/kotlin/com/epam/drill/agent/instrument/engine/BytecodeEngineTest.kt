@@ -0,0 +1,153 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument.engine
+
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import net.bytebuddy.jar.asm.ClassReader
+import net.bytebuddy.jar.asm.ClassVisitor
+import net.bytebuddy.jar.asm.MethodVisitor
+import net.bytebuddy.utility.OpenedClassReader
+
+class BytecodeEngineTest {
+
+    private val className = HookedTarget::class.java.name
+    private val classBytes = HookedTarget::class.java.getResourceAsStream("${HookedTarget::class.java.simpleName}.class")!!
+        .use { it.readBytes() }
+    private val hooks = listOf(
+        MethodHook(
+            "wrap",
+            "([Ljava/lang/String;JLjava/lang/StringBuilder;)Ljava/lang/String;",
+            HookPosition.ENTRY,
+            HookRecorder::class.java.name,
+            HookRecorder::onEntry.name,
+            listOf(1)
+        ),
+        MethodHook(
+            "wrap",
+            "([Ljava/lang/String;JLjava/lang/StringBuilder;)Ljava/lang/String;",
+            HookPosition.EXIT,
+            HookRecorder::class.java.name,
+            HookRecorder::onExit.name,
+            listOf(2, 3),
+            guarded = false
+        ),
+        MethodHook(
+            "unwrap",
+            "(Ljava/lang/String;)V",
+            HookPosition.EXIT,
+            HookRecorder::class.java.name,
+            HookRecorder::onEmptyExit.name,
+            guarded = false
+        )
+    )
+
+    @AfterTest
+    fun clearRecorder() = HookRecorder.events.clear()
+
+    @Test
+    fun `javassist and asm engines produce equivalent hooks`() {
+        val javassistResult = invokeTransformed(JavassistBytecodeEngine)
+        val javassistEvents = HookRecorder.events.toList()
+        HookRecorder.events.clear()
+        val asmResult = invokeTransformed(AsmBytecodeEngine)
+        val asmEvents = HookRecorder.events.toList()
+
+        assertEquals(listOf("entry:a,b", "exit:42:ab", "exit", "exit"), asmEvents)
+        assertEquals(javassistEvents, asmEvents)
+        assertEquals(javassistResult, asmResult)
+    }
+
+    @Test
+    fun `javassist and asm engines keep the same class members`() {
+        val javassistBytes = JavassistBytecodeEngine.instrument(className, classBytes, javaClass.classLoader, hooks)
+        val asmBytes = AsmBytecodeEngine.instrument(className, classBytes, javaClass.classLoader, hooks)
+        assertEquals(methods(classBytes), methods(javassistBytes))
+        assertEquals(methods(classBytes), methods(asmBytes))
+    }
+
+    @Test
+    fun `asm engine rejects guarded exit hooks`() {
+        val guardedExitHook = hooks[1].copy(guarded = true)
+        assertFailsWith<IllegalArgumentException> {
+            AsmBytecodeEngine.instrument(className, classBytes, javaClass.classLoader, listOf(guardedExitHook))
+        }
+    }
+
+    private fun invokeTransformed(engine: BytecodeEngine): Any? {
+        val bytes = engine.instrument(className, classBytes, javaClass.classLoader, hooks)
+        val clazz = TransformedClassLoader(className, bytes).loadClass(className)
+        val target = clazz.getDeclaredConstructor().newInstance()
+        val result = clazz.getMethod("wrap", Array<String>::class.java, Long::class.java, StringBuilder::class.java)
+            .invoke(target, arrayOf("a", "b"), 42L, StringBuilder())
+        clazz.getMethod("unwrap", String::class.java).invoke(target, "")
+        clazz.getMethod("unwrap", String::class.java).invoke(target, "c")
+        return result
+    }
+
+    private fun methods(bytes: ByteArray) = mutableListOf<String>().also { methods ->
+        OpenedClassReader.of(bytes).accept(object : ClassVisitor(OpenedClassReader.ASM_API) {
+            override fun visitMethod(
+                access: Int,
+                name: String,
+                descriptor: String,
+                signature: String?,
+                exceptions: Array<String>?
+            ): MethodVisitor? = null.also { methods.add("$access $name$descriptor") }
+        }, ClassReader.SKIP_CODE)
+    }
+
+    private class TransformedClassLoader(
+        private val className: String,
+        private val bytes: ByteArray
+    ) : ClassLoader(BytecodeEngineTest::class.java.classLoader) {
+        override fun loadClass(name: String, resolve: Boolean): Class<*> = when (name) {
+            className -> findLoadedClass(name) ?: defineClass(name, bytes, 0, bytes.size)
+            else -> super.loadClass(name, resolve)
+        }
+    }
+
+}
+
+class HookedTarget {
+    fun wrap(sources: Array<String>, length: Long, target: StringBuilder): String {
+        sources.forEach { target.append(it) }
+        return "$length:$target"
+    }
+
+    fun unwrap(source: String) {
+        if (source.isEmpty()) return
+        source.length
+    }
+}
+
+object HookRecorder {
+    val events = mutableListOf<String>()
+
+    fun onEntry(sources: Array<String>) {
+        events.add("entry:${sources.joinToString(",")}")
+    }
+
+    fun onExit(length: Long, target: StringBuilder) {
+        events.add("exit:$length:$target")
+    }
+
+    fun onEmptyExit() {
+        events.add("exit")
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument.netty
+
+import java.util.function.Supplier
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import io.netty.channel.ChannelInboundHandlerAdapter
+import io.netty.handler.codec.http.HttpObjectAggregator
+import io.netty.handler.codec.http.HttpResponseEncoder
+import io.netty.handler.codec.http.HttpServerCodec
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec
+import com.epam.drill.agent.instrument.NETTY_CHANNEL_PIPELINE
+import com.epam.drill.agent.instrument.TestAgentConfiguration
+import com.epam.drill.agent.instrument.TestHeadersRetriever
+
+class NettyHttpServerTransformerObjectTest {
+
+    private val request = "GET / HTTP/1.1\r\nHost: localhost\r\nContent-Length: 0\r\ndrill-session-id: session-1\r\n\r\n"
+
+    @AfterTest
+    fun reset() = TestNettyTransformer.removeHeaders()
+
+    @Test
+    fun `drill handler is placed after the codec`() {
+        val result = runScenario("codec")
+        assertEquals(listOf("codec", DRILL_HTTP_SERVER_HANDLER_NAME, "application"), result.names())
+        assertEquals(listOf(mapOf("drill-session-id" to "session-1")), result[NettyPipelineScenario.CONTEXTS])
+        assertTrue(result.response().contains("drill-session-id: session-1\r\n"))
+    }
+
+    @Test
+    fun `drill handler is placed after the aggregator`() {
+        val result = runScenario("codec", "decompressor", "aggregator")
+        assertEquals(
+            listOf("codec", "decompressor", "aggregator", DRILL_HTTP_SERVER_HANDLER_NAME, "application"),
+            result.names()
+        )
+        assertEquals(listOf(mapOf("drill-session-id" to "session-1")), result[NettyPipelineScenario.CONTEXTS])
+        assertTrue(result.response().contains("drill-session-id: session-1\r\n"))
+        assertTrue(result.response().contains("drill-agent-id: agent-1\r\n"))
+        assertNull(TestNettyTransformer.retrieveHeaders())
+    }
+
+    @Test
+    fun `http decoders are recognized by class hierarchy`() {
+        assertTrue(TestNettyTransformer.isHttpServerDecoder(HttpServerCodec()))
+        assertTrue(TestNettyTransformer.isHttpServerDecoder(HttpObjectAggregator(8192)))
+        assertTrue(TestNettyTransformer.isHttpServerDecoder(object : HttpObjectAggregator(8192) {}))
+        assertTrue(TestNettyTransformer.isHttpServerDecoder(Http2StreamFrameToHttpObjectCodec(true)))
+        assertFalse(TestNettyTransformer.isHttpServerDecoder(HttpResponseEncoder()))
+        assertFalse(TestNettyTransformer.isHttpServerDecoder(ChannelInboundHandlerAdapter()))
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun runScenario(vararg handlers: String): Map<String, Any?> {
+        val scenario = NettyClassLoader(javaClass.classLoader).loadClass(NettyPipelineScenario::class.java.name)
+        val context = Supplier<Map<String, String>?> { TestNettyTransformer.retrieveHeaders() }
+        return scenario.getMethod("run", List::class.java, String::class.java, Supplier::class.java)
+            .invoke(null, handlers.toList(), request, context) as Map<String, Any?>
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun Map<String, Any?>.names() = (get(NettyPipelineScenario.NAMES) as List<String>)
+        .filterNot { it.startsWith("DefaultChannelPipeline") }
+
+    private fun Map<String, Any?>.response() = get(NettyPipelineScenario.RESPONSE) as String
+
+    /**
+     * Child-first classloader for Netty classes and [NettyPipelineScenario], Netty channel pipeline is instrumented.
+     */
+    private class NettyClassLoader(parent: ClassLoader) : ClassLoader(parent) {
+        override fun loadClass(name: String, resolve: Boolean): Class<*> = synchronized(getClassLoadingLock(name)) {
+            if (!name.startsWith("io.netty.") && !name.startsWith(NettyPipelineScenario::class.java.name))
+                return super.loadClass(name, resolve)
+            findLoadedClass(name) ?: run {
+                val className = name.replace('.', '/')
+                val bytes = parent.getResourceAsStream("$className.class")?.use { it.readBytes() }
+                    ?: throw ClassNotFoundException(name)
+                val transformed = if (className == NETTY_CHANNEL_PIPELINE) {
+                    TestNettyTransformer.transform(className, bytes, this, null) ?: bytes
+                } else bytes
+                defineClass(name, transformed, 0, transformed.size)
+            }
+        }
+    }
+
+}
+
+internal object TestNettyTransformer : NettyHttpServerTransformerObject(TestHeadersRetriever, TestAgentConfiguration()) {
+    private val headers = ThreadLocal<Map<String, String>>()
+    override fun removeHeaders() = headers.remove()
+    override fun storeHeaders(headers: Map<String, String>) = this.headers.set(headers.toMap())
+    override fun retrieveHeaders(): Map<String, String>? = headers.get()
+    override fun hasHeaders() = headers.get() != null
+    override fun isProcessRequests() = true
+    override fun isProcessResponses() = true
+    override fun getClassPath(): String = System.getProperty("java.class.path")
+}
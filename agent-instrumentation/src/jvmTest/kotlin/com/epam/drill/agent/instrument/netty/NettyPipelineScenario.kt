@@ -0,0 +1,82 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument.netty
+
+import java.util.function.Supplier
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.Unpooled
+import io.netty.channel.ChannelHandler
+import io.netty.channel.ChannelHandlerContext
+import io.netty.channel.ChannelInboundHandlerAdapter
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.http.DefaultFullHttpResponse
+import io.netty.handler.codec.http.HttpContentDecompressor
+import io.netty.handler.codec.http.HttpHeaderNames
+import io.netty.handler.codec.http.HttpObjectAggregator
+import io.netty.handler.codec.http.HttpRequest
+import io.netty.handler.codec.http.HttpResponseStatus
+import io.netty.handler.codec.http.HttpServerCodec
+import io.netty.handler.codec.http.HttpVersion
+import io.netty.util.ReferenceCountUtil
+
+/**
+ * Netty server scenario, loaded by the classloader with instrumented Netty classes.
+ *
+ * Adds [handlers] to the pipeline of an embedded channel followed by the application handler,
+ * which records [context] for each received request and responds with an empty response.
+ */
+object NettyPipelineScenario {
+
+    const val NAMES = "names"
+    const val CONTEXTS = "contexts"
+    const val RESPONSE = "response"
+
+    @JvmStatic
+    fun run(handlers: List<String>, request: String, context: Supplier<Map<String, String>?>): Map<String, Any?> {
+        val contexts = mutableListOf<Map<String, String>?>()
+        val channel = EmbeddedChannel()
+        handlers.forEach { channel.pipeline().addLast(it, newHandler(it)) }
+        channel.pipeline().addLast("application", object : ChannelInboundHandlerAdapter() {
+            override fun channelRead(ctx: ChannelHandlerContext, msg: Any) {
+                if (msg is HttpRequest) {
+                    contexts.add(context.get())
+                    val response = DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)
+                    response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0)
+                    ctx.writeAndFlush(response)
+                }
+                ReferenceCountUtil.release(msg)
+            }
+        })
+        val names = channel.pipeline().names().toList()
+        channel.writeInbound(Unpooled.copiedBuffer(request, Charsets.US_ASCII))
+        val response = StringBuilder()
+        while (true) {
+            val buffer = channel.readOutbound<ByteBuf>() ?: break
+            response.append(buffer.toString(Charsets.US_ASCII))
+            buffer.release()
+        }
+        channel.finishAndReleaseAll()
+        return mapOf(NAMES to names, CONTEXTS to contexts, RESPONSE to response.toString())
+    }
+
+    private fun newHandler(name: String): ChannelHandler = when (name) {
+        "codec" -> HttpServerCodec()
+        "decompressor" -> HttpContentDecompressor()
+        "aggregator" -> HttpObjectAggregator(8192)
+        else -> throw IllegalArgumentException("Unknown handler: $name")
+    }
+
+}
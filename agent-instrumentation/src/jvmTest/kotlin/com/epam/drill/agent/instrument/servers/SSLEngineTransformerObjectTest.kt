@@ -0,0 +1,111 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument.servers
+
+import java.nio.ByteBuffer
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotSame
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import com.epam.drill.agent.instrument.InstrumentationGuard
+import com.epam.drill.agent.instrument.TestAgentConfiguration
+import com.epam.drill.agent.instrument.TestHeadersRetriever
+
+class SSLEngineTransformerObjectTest {
+
+    private val response = "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".encodeToByteArray()
+    private val request = "GET / HTTP/1.1\r\nHost: localhost\r\ndrill-session-id: session-1\r\n\r\n".encodeToByteArray()
+    private val engine = Any()
+
+    @AfterTest
+    fun reset() {
+        InstrumentationGuard.active = true
+        TestSSLEngineTransformer.removeHeaders()
+    }
+
+    @Test
+    fun `headers are written to replacement of heap buffer with spare capacity`() {
+        assertBytesPastLimitUntouched(ByteBuffer.allocate(response.size + 256))
+    }
+
+    @Test
+    fun `headers are written to replacement of direct buffer view with spare capacity`() {
+        val chunk = ByteBuffer.allocateDirect(response.size + 512)
+        chunk.position(128)
+        assertBytesPastLimitUntouched(chunk.slice())
+    }
+
+    @Test
+    fun `request headers are read from bytes unwrapped after the mark`() {
+        val buffer = ByteBuffer.allocate(request.size)
+        TestSSLEngineTransformer.markHttpRequest(arrayOf(buffer), 0, 1)
+        buffer.put(request)
+        TestSSLEngineTransformer.readHttpRequest(engine, arrayOf(buffer), 0, 1)
+        assertEquals(mapOf("drill-session-id" to "session-1"), TestSSLEngineTransformer.retrieveHeaders())
+    }
+
+    @Test
+    fun `request headers aren't read while guard is inactive or without the mark`() {
+        val buffer = ByteBuffer.allocate(request.size)
+        TestSSLEngineTransformer.markHttpRequest(arrayOf(buffer), 0, 1)
+        buffer.put(request)
+        InstrumentationGuard.active = false
+        TestSSLEngineTransformer.readHttpRequest(engine, arrayOf(buffer), 0, 1)
+        assertNull(TestSSLEngineTransformer.retrieveHeaders())
+        InstrumentationGuard.active = true
+        TestSSLEngineTransformer.readHttpRequest(engine, arrayOf(buffer), 0, 1)
+        assertNull(TestSSLEngineTransformer.retrieveHeaders())
+    }
+
+    private fun assertBytesPastLimitUntouched(source: ByteBuffer) {
+        source.put(response)
+        while (source.hasRemaining()) source.put(SPARE_BYTE)
+        source.position(0)
+        source.limit(response.size)
+        TestSSLEngineTransformer.storeHeaders(mapOf("drill-session-id" to "session-1"))
+        val buffers = arrayOf(source)
+
+        TestSSLEngineTransformer.writeHttpRequest(buffers, 0, 1)
+
+        assertNotSame(source, buffers[0])
+        assertEquals(response.size, source.limit())
+        assertEquals(response.size, source.position())
+        assertTrue((response.size until source.capacity()).all { source.get(it) == SPARE_BYTE })
+        val written = ByteArray(buffers[0].remaining()).also(buffers[0]::get).decodeToString()
+        assertTrue(written.startsWith("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n"))
+        assertTrue(written.contains("drill-session-id: session-1\r\n"))
+        assertTrue(written.contains("drill-agent-id: agent-1\r\n"))
+        assertTrue(written.endsWith("\r\n\r\n"))
+    }
+
+    private object TestSSLEngineTransformer : SSLEngineTransformerObject(TestHeadersRetriever, TestAgentConfiguration()) {
+        private val headers = ThreadLocal<Map<String, String>>()
+        override fun removeHeaders() = headers.remove()
+        override fun storeHeaders(headers: Map<String, String>) = this.headers.set(headers.toMap())
+        override fun retrieveHeaders(): Map<String, String>? = headers.get()
+        override fun hasHeaders() = headers.get() != null
+        override fun isProcessRequests() = true
+        override fun isProcessResponses() = true
+        override fun getClassPath(): String = System.getProperty("java.class.path")
+    }
+
+    private companion object {
+        const val SPARE_BYTE = 0x7f.toByte()
+    }
+
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument.ws
+
+import java.nio.ByteBuffer
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import com.epam.drill.agent.instrument.DrillPayloadTrailer
+import com.epam.drill.agent.instrument.HeadersProcessor
+import com.epam.drill.agent.instrument.PayloadProcessor
+
+class WsContextChangesTest {
+
+    private val headers = mapOf("drill-session-id" to "session-1", "drill-test-name" to "test-1")
+    private val handshakeHeaders = mapOf(PayloadProcessor.HEADER_WS_CONTEXT_CHANGES to "true")
+
+    @Test
+    fun `messages without trailer get headers of the last received trailer`() {
+        val processor = TestHeadersProcessor(current = mapOf("drill-session-id" to "other"))
+        received(processor, headers)
+        processor.stored = null
+        WsContextChanges.received(processor, handshakeHeaders, "message", -1)
+        assertEquals(headers, processor.stored)
+    }
+
+    @Test
+    fun `empty trailer clears received headers`() {
+        val processor = TestHeadersProcessor(current = headers)
+        received(processor, headers)
+        received(processor, emptyMap())
+        processor.stored = null
+        WsContextChanges.received(processor, handshakeHeaders, ByteBuffer.wrap("message".encodeToByteArray()), -1)
+        assertNull(processor.stored)
+    }
+
+    @Test
+    fun `text and binary trailers are parsed equally`() {
+        val processor = TestHeadersProcessor()
+        val message = "message" + DrillPayloadTrailer.trailer(headers)
+        WsContextChanges.received(processor, handshakeHeaders, ByteBuffer.wrap(message.encodeToByteArray()), "message".length)
+        processor.stored = null
+        WsContextChanges.received(processor, handshakeHeaders, "message", -1)
+        assertEquals(headers, processor.stored)
+    }
+
+    private fun received(processor: HeadersProcessor, trailerHeaders: Map<String, String>) {
+        val message = "message" + DrillPayloadTrailer.trailer(trailerHeaders)
+        WsContextChanges.received(processor, handshakeHeaders, message, "message".length)
+    }
+
+    private class TestHeadersProcessor(
+        private val current: Map<String, String>? = null,
+        var stored: Map<String, String>? = null
+    ) : HeadersProcessor {
+        override fun removeHeaders() = Unit
+        override fun storeHeaders(headers: Map<String, String>) {
+            stored = headers
+        }
+        override fun retrieveHeaders() = current
+        override fun hasHeaders() = current != null
+        override fun isProcessRequests() = true
+        override fun isProcessResponses() = true
+    }
+
+}
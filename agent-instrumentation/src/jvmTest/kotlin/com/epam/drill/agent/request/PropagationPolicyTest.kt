@@ -0,0 +1,133 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.request
+
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import com.epam.drill.agent.common.request.DrillInitialContext
+import com.epam.drill.agent.common.request.DrillRequest
+import com.epam.drill.agent.common.request.withDrillRequest
+import com.epam.drill.agent.instrument.DrillRequestHeadersProcessor
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.CONTEXT_PROPAGATION_RATE_LIMIT
+import com.epam.drill.agent.instrument.InstrumentationParameterDefinitions.CONTEXT_PROPAGATION_SAMPLING_PERCENT
+import com.epam.drill.agent.instrument.TestAgentConfiguration
+import com.epam.drill.agent.instrument.TestHeadersRetriever
+
+class PropagationPolicyTest {
+
+    private val headersProcessor = DrillRequestHeadersProcessor(TestHeadersRetriever, DrillRequestHolder)
+
+    @BeforeTest
+    fun setupInitialContext() {
+        DrillInitialContext.add(SESSION_HEADER, INITIAL_SESSION)
+    }
+
+    @AfterTest
+    fun cleanup() {
+        DrillRequestHolder.remove()
+        DrillInitialContext.remove(SESSION_HEADER)
+        configure()
+    }
+
+    @Test
+    fun `not sampled request is skipped by all hooks until it's removed`() {
+        configure(samplingPercent = 0)
+        headersProcessor.storeRequestHeaders(emptyMap())
+        configure(samplingPercent = 100)
+
+        repeat(3) { assertClientHooksSkipped() }
+        val previous = DrillRequestHolder.swap(DrillRequest(PROPAGATED_SESSION))
+        assertEquals(PROPAGATED_SESSION, headersProcessor.retrieveHeaders()?.get(SESSION_HEADER))
+        DrillRequestHolder.swap(previous)
+        assertClientHooksSkipped()
+
+        headersProcessor.removeHeaders()
+        headersProcessor.storeRequestHeaders(emptyMap())
+        assertEquals(INITIAL_SESSION, headersProcessor.retrieveHeaders()?.get(SESSION_HEADER))
+    }
+
+    @Test
+    fun `sampled request keeps initial context regardless of later policy changes`() {
+        configure(samplingPercent = 100)
+        headersProcessor.storeRequestHeaders(emptyMap())
+        configure(samplingPercent = 0)
+
+        repeat(3) {
+            assertTrue(headersProcessor.hasHeaders())
+            assertEquals(INITIAL_SESSION, headersProcessor.retrieveHeaders()?.get(SESSION_HEADER))
+        }
+        val request = DrillRequestHolder.retrieve()!!
+        DrillRequestHolder.withDrillRequest(request) {
+            assertEquals(INITIAL_SESSION, headersProcessor.retrieveHeaders()?.get(SESSION_HEADER))
+        }
+        assertEquals(INITIAL_SESSION, headersProcessor.retrieveHeaders()?.get(SESSION_HEADER))
+    }
+
+    @Test
+    fun `rate limit permit is taken once per request`() {
+        configure(rateLimit = 1)
+        var sampled = 0
+        repeat(3) {
+            headersProcessor.storeRequestHeaders(emptyMap())
+            if (headersProcessor.hasHeaders()) {
+                sampled++
+                repeat(10) { assertTrue(headersProcessor.hasHeaders()) }
+            }
+            headersProcessor.removeHeaders()
+        }
+        headersProcessor.storeRequestHeaders(emptyMap())
+
+        assertTrue(sampled in 1..2)
+        assertClientHooksSkipped()
+    }
+
+    @Test
+    fun `request with drill session is always processed`() {
+        configure(samplingPercent = 0)
+        headersProcessor.storeRequestHeaders(mapOf(SESSION_HEADER to HEADER_SESSION))
+
+        assertTrue(headersProcessor.hasHeaders())
+        assertEquals(HEADER_SESSION, headersProcessor.retrieveHeaders()?.get(SESSION_HEADER))
+    }
+
+    private fun assertClientHooksSkipped() {
+        assertFalse(headersProcessor.hasHeaders())
+        assertNull(headersProcessor.retrieveHeaders())
+        assertNull(DrillRequestHolder.dump())
+    }
+
+    private fun configure(samplingPercent: Int = 100, rateLimit: Long = 0L) = PropagationPolicy.configure(
+        TestAgentConfiguration(
+            mapOf(
+                CONTEXT_PROPAGATION_SAMPLING_PERCENT.name to samplingPercent,
+                CONTEXT_PROPAGATION_RATE_LIMIT.name to rateLimit
+            )
+        ).parameters
+    )
+
+    private companion object {
+        const val SESSION_HEADER = "drill-session-id"
+        const val INITIAL_SESSION = "initial-session"
+        const val PROPAGATED_SESSION = "propagated-session"
+        const val HEADER_SESSION = "header-session"
+    }
+
+}
@@ -18,9 +18,9 @@ package com.epam.drill.agent.instrument
 import com.epam.drill.agent.jvmapi.gen.CallObjectMethod
 import com.epam.drill.agent.jvmapi.gen.NewStringUTF
 import com.epam.drill.agent.jvmapi.gen.jobject
-import com.epam.drill.agent.jvmapi.getObjectMethod
 import com.epam.drill.agent.jvmapi.toByteArray
 import com.epam.drill.agent.jvmapi.toJByteArray
+import com.epam.drill.agent.jvmapi.withObjectMethod
 import kotlinx.cinterop.ExperimentalForeignApi
 
 abstract class JvmTransformer : Transformer {
@@ -33,14 +33,14 @@ abstract class JvmTransformer : Transformer {
         loader: Any?,
         protectionDomain: Any?,
     ): ByteArray? =
-        getObjectMethod(
+        withObjectMethod(
             this::class,
             this::transform.name,
             "(Ljava/lang/String;[BLjava/lang/Object;Ljava/lang/Object;)[B"
-        ).run {
+        ) { instance, methodId ->
             CallObjectMethod(
-                this.first,
-                this.second,
+                instance,
+                methodId,
                 NewStringUTF(className),
                 toJByteArray(classFileBuffer),
                 loader as jobject?,
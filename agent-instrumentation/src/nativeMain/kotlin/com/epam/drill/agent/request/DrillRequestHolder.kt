@@ -15,6 +15,15 @@
  */
 package com.epam.drill.agent.request
 
+import kotlin.concurrent.AtomicInt
+import kotlin.native.concurrent.ThreadLocal
+import kotlinx.cinterop.COpaquePointer
+import kotlinx.cinterop.ExperimentalForeignApi
+import kotlinx.cinterop.alloc
+import kotlinx.cinterop.cstr
+import kotlinx.cinterop.memScoped
+import kotlinx.cinterop.ptr
+import kotlinx.cinterop.staticCFunction
 import kotlinx.serialization.protobuf.ProtoBuf
 import com.epam.drill.agent.common.request.DrillRequest
 import com.epam.drill.agent.common.request.RequestHolder
@@ -22,14 +31,36 @@ import com.epam.drill.agent.jvmapi.callObjectByteArrayMethod
 import com.epam.drill.agent.jvmapi.callObjectVoidMethod
 import com.epam.drill.agent.jvmapi.callObjectVoidMethodWithBoolean
 import com.epam.drill.agent.jvmapi.callObjectVoidMethodWithByteArray
+import com.epam.drill.agent.jvmapi.gen.FindClass
+import com.epam.drill.agent.jvmapi.gen.JNINativeMethod
+import com.epam.drill.agent.jvmapi.gen.JNI_OK
+import com.epam.drill.agent.jvmapi.gen.RegisterNatives
 
 actual object DrillRequestHolder : RequestHolder {
 
+    private const val CACHE_UNINITIALIZED = 0
+    private const val CACHE_ENABLED = 1
+    private const val CACHE_DISABLED = 2
+    private const val CACHE_INITIALIZING = 3
+
+    private val cacheState = AtomicInt(CACHE_UNINITIALIZED)
+
     actual override fun remove() =
         callObjectVoidMethod(this::class, RequestHolder::remove)
 
-    actual override fun retrieve() =
-        dump()?.let { ProtoBuf.decodeFromByteArray(DrillRequest.serializer(), it) }
+    /**
+     * Returns the drill request of the current thread cached by the generation of thread requests,
+     * the JVM side bumps the generation on each request change, so JNI calls are made only after changes.
+     */
+    actual override fun retrieve(): DrillRequest? {
+        if (!cacheEnabled()) return decode(dump())
+        val generation = RequestCache.generation
+        if (RequestCache.cachedGeneration == generation) return RequestCache.request
+        return decode(dump()).also {
+            RequestCache.request = it
+            RequestCache.cachedGeneration = generation
+        }
+    }
 
     actual override fun store(drillRequest: DrillRequest) =
         store(ProtoBuf.encodeToByteArray(DrillRequest.serializer(), drillRequest))
@@ -39,4 +70,49 @@ actual object DrillRequestHolder : RequestHolder {
 
     actual fun dump(): ByteArray? =
         callObjectByteArrayMethod(this::class, this::dump)
-}
\ No newline at end of file
+
+    private fun decode(drillRequest: ByteArray?) =
+        drillRequest?.let { ProtoBuf.decodeFromByteArray(DrillRequest.serializer(), it) }
+
+    /**
+     * The cache is published as enabled only after the JVM side starts reporting request changes,
+     * other threads don't use the cache while it's initializing.
+     */
+    private fun cacheEnabled(): Boolean {
+        val state = cacheState.value
+        if (state != CACHE_UNINITIALIZED) return state == CACHE_ENABLED
+        if (!cacheState.compareAndSet(CACHE_UNINITIALIZED, CACHE_INITIALIZING)) return false
+        val enabled = registerContextChanged()
+        if (enabled) callObjectVoidMethodWithBoolean(this::class, "enableNativeCache", true)
+        cacheState.value = if (enabled) CACHE_ENABLED else CACHE_DISABLED
+        return enabled
+    }
+
+    @OptIn(ExperimentalForeignApi::class)
+    private fun registerContextChanged(): Boolean = memScoped {
+        val classRef = FindClass(this@DrillRequestHolder::class.qualifiedName!!.replace(".", "/")) ?: return false
+        val method = alloc<JNINativeMethod>().apply {
+            name = "contextChanged".cstr.ptr
+            signature = "()V".cstr.ptr
+            fnPtr = staticCFunction(::contextChanged)
+        }
+        RegisterNatives(classRef, method.ptr, 1) == JNI_OK
+    }
+
+}
+
+/**
+ * Per-thread cache of the last retrieved drill request.
+ */
+@ThreadLocal
+private object RequestCache {
+    var generation = 0L
+    var cachedGeneration = -1L
+    var request: DrillRequest? = null
+}
+
+@OptIn(ExperimentalForeignApi::class)
+@Suppress("UNUSED_PARAMETER")
+private fun contextChanged(env: COpaquePointer?, thiz: COpaquePointer?) {
+    RequestCache.generation++
+}
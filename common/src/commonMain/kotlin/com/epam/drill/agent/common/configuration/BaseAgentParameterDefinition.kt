@@ -18,6 +18,7 @@ package com.epam.drill.agent.common.configuration
 import com.epam.drill.agent.konform.validation.Validation
 import com.epam.drill.agent.konform.validation.ValidationBuilder
 import com.epam.drill.agent.konform.validation.ValidationResult
+import kotlin.jvm.Volatile
 import kotlin.reflect.KClass
 
 sealed class BaseAgentParameterDefinition<T : Any>(
@@ -28,6 +29,12 @@ sealed class BaseAgentParameterDefinition<T : Any>(
     val validation: ValidationType = ValidationType.STRICT,
     val validator: (T?, AgentParameters) -> ValidationResult<*>
 ) {
+    /**
+     * Dense index of the definition assigned by [AgentParameters] implementation on definition, `-1` if not assigned.
+     */
+    @Volatile
+    var slot: Int = -1
+
     fun isSoftValidation() = validation == ValidationType.SOFT
     fun isStrictValidation() = validation == ValidationType.STRICT
 }
@@ -19,4 +19,32 @@ interface RequestHolder {
     fun store(drillRequest: DrillRequest)
     fun retrieve(): DrillRequest?
     fun remove()
+
+    /**
+     * Replaces the drill request of the current thread and returns the replaced one.
+     * Unlike [store] and [remove] it's intended for context transfers between threads,
+     * so implementations may skip request lifecycle callbacks.
+     */
+    fun swap(drillRequest: DrillRequest?): DrillRequest? = retrieve().also {
+        if (drillRequest != null) store(drillRequest) else remove()
+    }
+
+    /**
+     * Stores the initial drill context for the current thread at the start of a request without drill session.
+     * Implementations may decide to skip the request, the decision is kept until the request is removed.
+     */
+    fun storeInitial() = Unit
+}
+
+/**
+ * Runs the [body] with the [drillRequest] set for the current thread and restores the previous request after it.
+ * Request lifecycle callbacks aren't invoked, so it can be used on each thread hop of a single request.
+ */
+inline fun <T> RequestHolder.withDrillRequest(drillRequest: DrillRequest, body: () -> T): T {
+    val previous = swap(drillRequest)
+    try {
+        return body()
+    } finally {
+        swap(previous)
+    }
 }
@@ -6,6 +6,7 @@ import com.hierynomus.gradle.license.tasks.LicenseFormat
 
 plugins {
     kotlin("multiplatform")
+    id("org.jetbrains.kotlinx.benchmark")
     id("com.github.hierynomus.license")
 }
 
@@ -20,6 +21,7 @@ repositories {
 }
 
 val microutilsLoggingVersion: String by parent!!.extra
+val kotlinxBenchmarkVersion: String by parent!!.extra
 
 kotlin {
     val configureCInterop: KotlinNativeTarget.() -> Unit = {
@@ -28,7 +30,9 @@ kotlin {
         }
     }
     jvm()
-    linuxX64(configure = configureCInterop)
+    linuxX64(configure = configureCInterop).apply {
+        compilations.create("benchmark").associateWith(compilations["main"])
+    }
     mingwX64(configure = configureCInterop)
     macosX64(configure = configureCInterop)
     macosArm64(configure = configureCInterop)
@@ -48,6 +52,11 @@ kotlin {
         val linuxX64Main by getting {
             dependsOn(nativeMain)
         }
+        val linuxX64Benchmark by getting {
+            dependencies {
+                implementation("org.jetbrains.kotlinx:kotlinx-benchmark-runtime:$kotlinxBenchmarkVersion")
+            }
+        }
         val mingwX64Main by getting {
             dependsOn(nativeMain)
         }
@@ -60,6 +69,12 @@ kotlin {
     }
 }
 
+benchmark {
+    targets {
+        register("linuxX64Benchmark")
+    }
+}
+
 @Suppress("UNUSED_VARIABLE")
 license {
     headerURI = URI("https://raw.githubusercontent.com/Drill4J/drill4j/develop/COPYRIGHT")
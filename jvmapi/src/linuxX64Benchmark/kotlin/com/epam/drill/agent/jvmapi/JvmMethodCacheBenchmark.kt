@@ -0,0 +1,74 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.jvmapi
+
+import kotlinx.benchmark.Benchmark
+import kotlinx.benchmark.BenchmarkMode
+import kotlinx.benchmark.BenchmarkTimeUnit
+import kotlinx.benchmark.Mode
+import kotlinx.benchmark.OutputTimeUnit
+import kotlinx.benchmark.Scope
+import kotlinx.benchmark.Setup
+import kotlinx.benchmark.State
+import kotlinx.cinterop.ExperimentalForeignApi
+import kotlinx.cinterop.interpretCPointer
+import kotlinx.cinterop.nativeNullPtr
+import com.epam.drill.agent.jvmapi.gen._jmethodID
+import com.epam.drill.agent.jvmapi.gen._jobject
+
+/**
+ * Measures lookups of cached object methods by [JvmMethodCache], which replace the FindClass, GetMethodID,
+ * GetStaticFieldID and GetStaticObjectField calls made on every native-to-JVM call before.
+ * JNI calls aren't made, cached handles point to fake references as no JVM is running in the benchmark process.
+ */
+@OptIn(ExperimentalForeignApi::class)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(BenchmarkTimeUnit.NANOSECONDS)
+class JvmMethodCacheBenchmark {
+
+    private val signatures = listOf(
+        VOID_SIGNATURE,
+        VOID_WITH_BOOLEAN_SIGNATURE,
+        VOID_WITH_INT_SIGNATURE,
+        VOID_WITH_STRING_SIGNATURE,
+        VOID_WITH_BYTE_ARRAY_SIGNATURE,
+        INT_SIGNATURE,
+        OBJECT_WITH_STRING_SIGNATURE,
+        STRING_SIGNATURE,
+        BYTE_ARRAY_SIGNATURE
+    )
+
+    @Setup
+    fun setup() {
+        val instanceRef = interpretCPointer<_jobject>(nativeNullPtr + 8L)!!
+        val methodId = interpretCPointer<_jmethodID>(nativeNullPtr + 16L)!!
+        signatures.forEach {
+            JvmMethodCache.replace(JvmMethodCacheBenchmark::class, METHOD, it, ObjectMethod(METHOD, it, instanceRef, methodId))
+        }
+    }
+
+    @Benchmark
+    fun firstCachedMethod() = JvmMethodCache[JvmMethodCacheBenchmark::class, METHOD, VOID_SIGNATURE]
+
+    @Benchmark
+    fun lastCachedMethod() = JvmMethodCache[JvmMethodCacheBenchmark::class, METHOD, BYTE_ARRAY_SIGNATURE]
+
+    private companion object {
+        const val METHOD = "benchmark"
+    }
+
+}
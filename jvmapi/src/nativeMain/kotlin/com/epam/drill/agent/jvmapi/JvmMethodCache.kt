@@ -0,0 +1,129 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.jvmapi
+
+import kotlin.concurrent.AtomicReference
+import kotlin.reflect.KClass
+import kotlinx.cinterop.ExperimentalForeignApi
+import com.epam.drill.agent.jvmapi.gen.DeleteLocalRef
+import com.epam.drill.agent.jvmapi.gen.ExceptionCheck
+import com.epam.drill.agent.jvmapi.gen.FindClass
+import com.epam.drill.agent.jvmapi.gen.GetMethodID
+import com.epam.drill.agent.jvmapi.gen.GetStaticFieldID
+import com.epam.drill.agent.jvmapi.gen.GetStaticObjectField
+import com.epam.drill.agent.jvmapi.gen.NewLocalRef
+import com.epam.drill.agent.jvmapi.gen.NewWeakGlobalRef
+import com.epam.drill.agent.jvmapi.gen.jmethodID
+import com.epam.drill.agent.jvmapi.gen.jobject
+import com.epam.drill.agent.jvmapi.gen.jweak
+
+/**
+ * Resolved method of a JVM object declared as Kotlin `object`.
+ *
+ * The object instance is referenced by a weak global reference, so the handle doesn't prevent unloading
+ * of the object class. The method ID stays valid while the instance reference isn't cleared.
+ */
+@OptIn(ExperimentalForeignApi::class)
+class ObjectMethod internal constructor(
+    val name: String,
+    val signature: String,
+    @PublishedApi internal val instanceRef: jweak,
+    val methodId: jmethodID
+)
+
+/**
+ * Cache of [ObjectMethod] handles, class, field and method lookups are made once per object method.
+ *
+ * Handles with cleared instance references are resolved again, e.g. after unloading of the object class.
+ * Failed lookups (JNI exceptions are described and cleared by the JNI wrappers) aren't cached and return `null`,
+ * so native callbacks skip the call instead of crashing the JVM.
+ */
+@OptIn(ExperimentalForeignApi::class)
+object JvmMethodCache {
+
+    private val methods = AtomicReference<Map<KClass<out Any>, List<ObjectMethod>>>(emptyMap())
+
+    operator fun get(clazz: KClass<out Any>, method: String, signature: String): ObjectMethod? =
+        methods.value[clazz]?.firstOrNull { it.name == method && it.signature == signature }
+            ?: resolve(clazz, method, signature)
+
+    /**
+     * Looks up the object method and replaces its cached handle, the cached handle is removed if the lookup fails.
+     * Replaced handles aren't deleted as they can be used by other threads at the moment.
+     */
+    fun resolve(clazz: KClass<out Any>, method: String, signature: String): ObjectMethod? =
+        lookup(clazz, method, signature).also { replace(clazz, method, signature, it) }
+
+    internal fun replace(clazz: KClass<out Any>, method: String, signature: String, objectMethod: ObjectMethod?) {
+        while (true) {
+            val current = methods.value
+            val classMethods = current[clazz].orEmpty().filterNot { it.name == method && it.signature == signature }
+            val updated = classMethods + listOfNotNull(objectMethod)
+            if (methods.compareAndSet(current, current + (clazz to updated))) return
+        }
+    }
+
+    private fun lookup(clazz: KClass<out Any>, method: String, signature: String): ObjectMethod? {
+        val className = clazz.qualifiedName?.replace(".", "/") ?: return null
+        val classRef = FindClass(className)?.takeUnless { ExceptionCheck().toInt() != 0 } ?: return null
+        try {
+            val methodId = GetMethodID(classRef, method, signature)?.takeUnless { ExceptionCheck().toInt() != 0 }
+                ?: return null
+            val instanceId = GetStaticFieldID(classRef, "INSTANCE", "L$className;")?.takeUnless { ExceptionCheck().toInt() != 0 }
+                ?: return null
+            val instanceRef = GetStaticObjectField(classRef, instanceId) ?: return null
+            try {
+                return NewWeakGlobalRef(instanceRef)?.let { ObjectMethod(method, signature, it, methodId) }
+            } finally {
+                DeleteLocalRef(instanceRef)
+            }
+        } finally {
+            DeleteLocalRef(classRef)
+        }
+    }
+
+    /**
+     * Returns a new local reference to the object instance of [objectMethod] or `null` if the instance was collected.
+     */
+    @PublishedApi
+    internal fun newLocalInstance(objectMethod: ObjectMethod): jobject? = NewLocalRef(objectMethod.instanceRef)
+
+}
+
+/**
+ * Invokes [call] with a local reference to the object instance and the cached method ID,
+ * the local reference is deleted after the call.
+ * Returns `null` without invoking [call] if the object method can't be resolved.
+ */
+@OptIn(ExperimentalForeignApi::class)
+inline fun <T> withObjectMethod(
+    clazz: KClass<out Any>,
+    method: String,
+    signature: String,
+    call: (jobject, jmethodID) -> T
+): T? {
+    var objectMethod = JvmMethodCache[clazz, method, signature] ?: return null
+    var instance = JvmMethodCache.newLocalInstance(objectMethod)
+    if (instance == null) {
+        objectMethod = JvmMethodCache.resolve(clazz, method, signature) ?: return null
+        instance = JvmMethodCache.newLocalInstance(objectMethod) ?: return null
+    }
+    try {
+        return call(instance, objectMethod.methodId)
+    } finally {
+        DeleteLocalRef(instance)
+    }
+}
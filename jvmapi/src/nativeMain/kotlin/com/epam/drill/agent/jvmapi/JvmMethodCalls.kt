@@ -26,54 +26,59 @@ import com.epam.drill.agent.jvmapi.gen.NewStringUTF
 import kotlinx.cinterop.ExperimentalForeignApi
 
 @OptIn(ExperimentalForeignApi::class)
-fun callObjectVoidMethod(clazz: KClass<out Any>, method: String) =
-    getObjectVoidMethod(clazz, method).run {
-        CallVoidMethod(this.first, this.second)
+fun callObjectVoidMethod(clazz: KClass<out Any>, method: String) {
+    withObjectMethod(clazz, method, VOID_SIGNATURE) { instance, methodId ->
+        CallVoidMethod(instance, methodId)
     }
+}
 
 fun callObjectVoidMethod(clazz: KClass<out Any>, method: KCallable<Unit>) =
     callObjectVoidMethod(clazz, method.name)
 
 @OptIn(ExperimentalForeignApi::class)
-fun callObjectVoidMethodWithBoolean(clazz: KClass<out Any>, method: String, bool: Boolean) =
-    getObjectVoidMethodWithBoolean(clazz, method).run {
-        CallVoidMethod(this.first, this.second, bool)
+fun callObjectVoidMethodWithBoolean(clazz: KClass<out Any>, method: String, bool: Boolean) {
+    withObjectMethod(clazz, method, VOID_WITH_BOOLEAN_SIGNATURE) { instance, methodId ->
+        CallVoidMethod(instance, methodId, bool)
     }
+}
 
 fun callObjectVoidMethodWithBoolean(clazz: KClass<out Any>, method: KCallable<Unit>, bool: Boolean) =
     callObjectVoidMethodWithBoolean(clazz, method.name, bool)
 
 @OptIn(ExperimentalForeignApi::class)
-fun callObjectVoidMethodWithInt(clazz: KClass<out Any>, method: String, int: Int) =
-    getObjectVoidMethodWithInt(clazz, method).run {
-        CallVoidMethod(this.first, this.second, int)
+fun callObjectVoidMethodWithInt(clazz: KClass<out Any>, method: String, int: Int) {
+    withObjectMethod(clazz, method, VOID_WITH_INT_SIGNATURE) { instance, methodId ->
+        CallVoidMethod(instance, methodId, int)
     }
+}
 
 fun callObjectVoidMethodWithInt(clazz: KClass<out Any>, method: KCallable<Unit>, int: Int) =
     callObjectVoidMethodWithInt(clazz, method.name, int)
 
 @OptIn(ExperimentalForeignApi::class)
-fun callObjectVoidMethodWithString(clazz: KClass<out Any>, method: String, string: String?) =
-    getObjectVoidMethodWithString(clazz, method).run {
-        CallVoidMethod(this.first, this.second, string?.let(::NewStringUTF))
+fun callObjectVoidMethodWithString(clazz: KClass<out Any>, method: String, string: String?) {
+    withObjectMethod(clazz, method, VOID_WITH_STRING_SIGNATURE) { instance, methodId ->
+        CallVoidMethod(instance, methodId, string?.let(::NewStringUTF))
     }
+}
 
 fun callObjectVoidMethodWithString(clazz: KClass<out Any>, method: KCallable<Unit>, string: String?) =
     callObjectVoidMethodWithString(clazz, method.name, string)
 
 @OptIn(ExperimentalForeignApi::class)
-fun callObjectVoidMethodWithByteArray(clazz: KClass<out Any>, method: String, bytes: ByteArray) =
-    getObjectVoidMethodWithByteArray(clazz, method).run {
-        CallVoidMethod(this.first, this.second, toJByteArray(bytes))
+fun callObjectVoidMethodWithByteArray(clazz: KClass<out Any>, method: String, bytes: ByteArray) {
+    withObjectMethod(clazz, method, VOID_WITH_BYTE_ARRAY_SIGNATURE) { instance, methodId ->
+        CallVoidMethod(instance, methodId, toJByteArray(bytes))
     }
+}
 
 fun callObjectVoidMethodWithByteArray(clazz: KClass<out Any>, method: KCallable<Unit>, bytes: ByteArray) =
     callObjectVoidMethodWithByteArray(clazz, method.name, bytes)
 
 @OptIn(ExperimentalForeignApi::class)
 fun callObjectIntMethod(clazz: KClass<out Any>, method: String) =
-    getObjectIntMethod(clazz, method).run {
-        CallIntMethod(this.first, this.second)
+    withObjectMethod(clazz, method, INT_SIGNATURE) { instance, methodId ->
+        CallIntMethod(instance, methodId)
     }
 
 fun callObjectIntMethod(clazz: KClass<out Any>, method: KCallable<Int>) =
@@ -81,8 +86,8 @@ fun callObjectIntMethod(clazz: KClass<out Any>, method: KCallable<Int>) =
 
 @OptIn(ExperimentalForeignApi::class)
 fun callObjectObjectMethodWithString(clazz: KClass<out Any>, method: String, string: String?) =
-    getObjectObjectMethodWithString(clazz, method).run {
-        CallObjectMethod(this.first, this.second, string?.let(::NewStringUTF))
+    withObjectMethod(clazz, method, OBJECT_WITH_STRING_SIGNATURE) { instance, methodId ->
+        CallObjectMethod(instance, methodId, string?.let(::NewStringUTF))
     }
 
 @OptIn(ExperimentalForeignApi::class)
@@ -92,8 +97,8 @@ fun callObjectObjectMethodWithString(clazz: KClass<out Any>, method: KCallable<A
 
 @OptIn(ExperimentalForeignApi::class)
 fun callObjectStringMethod(clazz: KClass<out Any>, method: String) =
-    getObjectStringMethod(clazz, method).run {
-        CallObjectMethod(this.first, this.second)?.let { GetStringUTFChars(it, null)?.toKString() }
+    withObjectMethod(clazz, method, STRING_SIGNATURE) { instance, methodId ->
+        CallObjectMethod(instance, methodId)?.let { GetStringUTFChars(it, null)?.toKString() }
     }
 
 fun callObjectStringMethod(clazz: KClass<out Any>, method: KCallable<String?>) =
@@ -101,8 +106,8 @@ fun callObjectStringMethod(clazz: KClass<out Any>, method: KCallable<String?>) =
 
 @OptIn(ExperimentalForeignApi::class)
 fun callObjectByteArrayMethod(clazz: KClass<out Any>, method: String) =
-    getObjectByteArrayMethod(clazz, method).run {
-        CallObjectMethod(this.first, this.second)?.let(::toByteArray)
+    withObjectMethod(clazz, method, BYTE_ARRAY_SIGNATURE) { instance, methodId ->
+        CallObjectMethod(instance, methodId)?.let(::toByteArray)
     }
 
 fun callObjectByteArrayMethod(clazz: KClass<out Any>, method: KCallable<ByteArray?>) =
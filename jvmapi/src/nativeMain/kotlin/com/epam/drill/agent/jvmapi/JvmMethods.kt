@@ -16,54 +16,64 @@
 package com.epam.drill.agent.jvmapi
 
 import kotlin.reflect.KClass
-import com.epam.drill.agent.jvmapi.gen.FindClass
-import com.epam.drill.agent.jvmapi.gen.GetMethodID
-import com.epam.drill.agent.jvmapi.gen.GetStaticFieldID
-import com.epam.drill.agent.jvmapi.gen.GetStaticObjectField
 import kotlinx.cinterop.ExperimentalForeignApi
 
+internal const val VOID_SIGNATURE = "()V"
+internal const val VOID_WITH_BOOLEAN_SIGNATURE = "(Z)V"
+internal const val VOID_WITH_INT_SIGNATURE = "(I)V"
+internal const val VOID_WITH_STRING_SIGNATURE = "(Ljava/lang/String;)V"
+internal const val VOID_WITH_BYTE_ARRAY_SIGNATURE = "([B)V"
+internal const val INT_SIGNATURE = "()I"
+internal const val OBJECT_WITH_STRING_SIGNATURE = "(Ljava/lang/String;)Ljava/lang/Object;"
+internal const val STRING_SIGNATURE = "()Ljava/lang/String;"
+internal const val BYTE_ARRAY_SIGNATURE = "()[B"
+
+/**
+ * Returns a new local reference to the object instance and the method ID resolved by [JvmMethodCache],
+ * `null` if the object method can't be resolved.
+ * Prefer [withObjectMethod], which deletes the local reference after the call.
+ */
 @OptIn(ExperimentalForeignApi::class)
 fun getObjectMethod(clazz: KClass<out Any>, method: String, signature: String) = run {
-    val className = clazz.qualifiedName!!.replace(".", "/")
-    val classRef = FindClass(className)
-    val methodId = GetMethodID(classRef, method, signature)
-    val instanceId = GetStaticFieldID(classRef, "INSTANCE", "L$className;")
-    val instaceRef = GetStaticObjectField(classRef, instanceId)
-    instaceRef to methodId
+    val objectMethod = JvmMethodCache[clazz, method, signature]
+    objectMethod?.let(JvmMethodCache::newLocalInstance)?.let { it to objectMethod.methodId }
+        ?: JvmMethodCache.resolve(clazz, method, signature)?.let { resolved ->
+            JvmMethodCache.newLocalInstance(resolved)?.let { it to resolved.methodId }
+        }
 }
 
 @OptIn(ExperimentalForeignApi::class)
 fun getObjectVoidMethod(clazz: KClass<out Any>, method: String) =
-    getObjectMethod(clazz, method, "()V")
+    getObjectMethod(clazz, method, VOID_SIGNATURE)
 
 @OptIn(ExperimentalForeignApi::class)
 fun getObjectVoidMethodWithBoolean(clazz: KClass<out Any>, method: String) =
-    getObjectMethod(clazz, method, "(Z)V")
+    getObjectMethod(clazz, method, VOID_WITH_BOOLEAN_SIGNATURE)
 
 @OptIn(ExperimentalForeignApi::class)
 fun getObjectVoidMethodWithInt(clazz: KClass<out Any>, method: String) =
-    getObjectMethod(clazz, method, "(I)V")
+    getObjectMethod(clazz, method, VOID_WITH_INT_SIGNATURE)
 
 @OptIn(ExperimentalForeignApi::class)
 fun getObjectVoidMethodWithString(clazz: KClass<out Any>, method: String) =
-    getObjectMethod(clazz, method, "(Ljava/lang/String;)V")
+    getObjectMethod(clazz, method, VOID_WITH_STRING_SIGNATURE)
 
 @OptIn(ExperimentalForeignApi::class)
 fun getObjectVoidMethodWithByteArray(clazz: KClass<out Any>, method: String) =
-    getObjectMethod(clazz, method, "([B)V")
+    getObjectMethod(clazz, method, VOID_WITH_BYTE_ARRAY_SIGNATURE)
 
 @OptIn(ExperimentalForeignApi::class)
 fun getObjectIntMethod(clazz: KClass<out Any>, method: String) =
-    getObjectMethod(clazz, method, "()I")
+    getObjectMethod(clazz, method, INT_SIGNATURE)
 
 @OptIn(ExperimentalForeignApi::class)
 fun getObjectObjectMethodWithString(clazz: KClass<out Any>, method: String) =
-    getObjectMethod(clazz, method, "(Ljava/lang/String;)Ljava/lang/Object;")
+    getObjectMethod(clazz, method, OBJECT_WITH_STRING_SIGNATURE)
 
 @OptIn(ExperimentalForeignApi::class)
 fun getObjectStringMethod(clazz: KClass<out Any>, method: String) =
-    getObjectMethod(clazz, method, "()Ljava/lang/String;")
+    getObjectMethod(clazz, method, STRING_SIGNATURE)
 
 @OptIn(ExperimentalForeignApi::class)
 fun getObjectByteArrayMethod(clazz: KClass<out Any>, method: String) =
-    getObjectMethod(clazz, method, "()[B")
+    getObjectMethod(clazz, method, BYTE_ARRAY_SIGNATURE)